@@ -2,13 +2,42 @@
  * Main Class file to Create the Game and Agent instance
  */
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 
 public class A3main {
 
-	public static void main(String[] args) {
-		
+	public static void main(String[] args) throws IOException {
+
+		// play a matrix of agents x boards in this JVM
+		if (args.length > 0 && args[0].equals("tournament")) {
+			Tournament.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		// host many games behind a loopback socket
+		if (args.length > 0 && args[0].equals("server")) {
+			GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		// print a game recorded with -Dgame.trace
+		if (args.length > 0 && args[0].equals("replay")) {
+			TraceReplay.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		// consistency checks of the journal, the probabilities, the loader and the traces
+		if (args.length > 0 && args[0].equals("check")) {
+			SelfCheck.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		boolean verbose=false; //prints the formulas for SAT if true
 		if (args.length>2 && args[2].equals("verbose") ){
 			verbose=true; //prints the formulas for SAT if true
@@ -19,15 +48,27 @@ public class A3main {
 		System.out.println("-------------------------------------------\n");
 		System.out.println("Agent " + args[0] + " plays " + args[1] + "\n");
 
-		// World
+		// World, or the path of a board file
+
+		Game game; // Create the game from the world map
+		try {
+			game = BoardLoader.fromArgument(args[1]);
+		} catch (UncheckedIOException e) {
+			System.out.println(e.getMessage() + ": " + e.getCause());
+			return;
+		} catch (IllegalArgumentException e) {
+			System.out.println("invalid board " + args[1] + ": " + e.getMessage());
+			return;
+		}
 
-		World world = World.valueOf(args[1]);
+		// record the moves with -Dgame.trace=file, appended to the file
+		String tracePath = System.getProperty("game.trace");
+		MoveTrace trace = tracePath == null ? null : MoveTrace.open(Path.of(tracePath));
+		game.setTrace(trace);
 
-		char[][] p = world.map;
+		char[][] p = game.getMap();
 		printBoard(p);
 		System.out.println("Start!");
-
-		Game game = new Game(p); // Create the game from the world map
 		switch (args[0]) {
 		case "P1":
 			//TODO: Part 1
@@ -46,52 +87,28 @@ public class A3main {
 			intermediateAgent.playGame();
 			break;
 		case "P4":
-			//TODO: Part 4
+			// deductions as in Part 3, then a guess on the safest cell when stuck
+			ProbabilityAgent probabilityAgent = new ProbabilityAgent(game,0, 0, verbose); // create the agent and give it the game
+			probabilityAgent.playGame();
+			break;
 		case "P5":
 			//TODO: Part 5
 
 		}
+		if (trace != null) {
+			trace.close();
+		}
 	}
 
 	
 	//prints the board in the required format - PLEASE DO NOT MODIFY
 	public static void printBoard(char[][] board) {
-		System.out.println();
-		// first line
-		for (int l = 0; l < board.length + 5; l++) {
-			System.out.print(" ");// shift to start
-		}
-		for (int j = 0; j < board[0].length; j++) {
-			System.out.print(j);// x indexes
-			if (j < 10) {
-				System.out.print(" ");
-			}
-		}
-		System.out.println();
-		// second line
-		for (int l = 0; l < board.length + 3; l++) {
-			System.out.print(" ");
-		}
-		for (int j = 0; j < board[0].length; j++) {
-			System.out.print(" -");// separator
-		}
-		System.out.println();
-		// the board
-		for (int i = 0; i < board.length; i++) {
-			for (int l = i; l < board.length - 1; l++) {
-				System.out.print(" ");// fill with left-hand spaces
-			}
-			if (i < 10) {
-				System.out.print(" ");
-			}
-
-			System.out.print(i + "/ ");// index+separator
-			for (int j = 0; j < board[0].length; j++) {
-				System.out.print(board[i][j] + " ");// value in the board
-			}
-			System.out.println();
-		}
-		System.out.println();
+		printBoard(board, System.out);
+	}
+
+	//prints the board in the required format to the given stream, as one bulk write
+	public static void printBoard(char[][] board, PrintStream out) {
+		new BoardRenderer(out, BoardRenderer.Mode.FULL).render(board);
 	}
 
 }
@@ -1,17 +1,31 @@
-import java.util.Vector;
+import java.io.PrintStream;
 
 /**
  * Represents an agent that plays the Minesweeper game. The agent can probe cells, set flags, and recursively probe adjacent cells when a zero is found.
  * This is inherrited by the Basic, Beginner and Intermediate agents
  */
-public class Agent {
+public abstract class Agent {
+    // the outcomes an agent reports at the end of a game
+    public static final String ALIVE = "Agent alive: all solved";
+    public static final String DEAD = "Agent dead: found mine";
+    public static final String NOT_TERMINATED = "Agent not terminated";
+
     protected Game game; // game being played
     protected int currentX; // the X position of the agent
     protected int currentY; // the Y position of the agent
 
     protected boolean verbose; // used for printing the game state at various iterations
     protected boolean loss; // check if the agent has lost or not
-    protected Vector<int[]> cellsToProbe = new Vector<>(); // list of all the cells that are needed to be probed
+    protected PrintStream out = System.out; // where the agent prints the game state and the outcome
+    private BoardRenderer renderer = new BoardRenderer(out, BoardRenderer.defaultMode()); // draws the game state on out
+    protected String result; // the outcome reported at the end of the game, null while playing
+    protected IntDeque cellsToProbe = new IntDeque(64); // ids of all the cells that are needed to be probed
+    protected long[] queued; // bitset of the cells currently waiting in cellsToProbe
+    protected boolean batchZeroReveal; // reveal a whole zero region in one game update
+    private IntDeque zeroRegion = new IntDeque(64); // cells of the zero region being revealed in batch mode
+    protected AgentMetrics metrics = AgentMetrics.create(); // counters and timers of this game, null when metrics are off
+    private InferenceEvents.GamePlayed gameEvent = new InferenceEvents.GamePlayed(); // the flight recorder event of this game
+    private boolean reported = true; // whether the outcome is published to the metrics registry and the flight recorder
 
     /**
      * Creates a new instance of the Agent class.
@@ -25,61 +39,135 @@ public class Agent {
         this.currentX = startX;
         this.currentY = startY;
         this.verbose = verbose;
+        gameEvent.begin();
     }
 
     /**
-     * Prints out the current state of the game.
+     * Creates the agent of the given part of the practical.
+     * @param name the agent, "P1", "P2", "P3" or "P4"
+     * @param game The Minesweeper game being played.
+     * @param verbose Whether the agent should print out information during the game.
+     * @return the agent, starting at [0][0]
+     * @throws IllegalArgumentException if there is no agent with that name
      */
-    public void displayGameState() {
-        A3main.printBoard(game.getGameState());
+    public static Agent create(String name, Game game, boolean verbose) {
+        switch (name) {
+        case "P1":
+            return new BasicAgent(game, 0, 0, verbose);
+        case "P2":
+            return new BeginnerAgent(game, 0, 0, verbose);
+        case "P3":
+            return new IntermediateAgent(game, 0, 0, verbose);
+        case "P4":
+            return new ProbabilityAgent(game, 0, 0, verbose);
+        default:
+            throw new IllegalArgumentException("unknown agent " + name);
+        }
     }
 
     /**
-     * Gets the neighbouring cells of the current cell.
-     * @return A vector of int arrays representing the neighbouring cells.
+     * Plays the game until it ends and reports the outcome. Implemented by each agent.
      */
-    public Vector<int[]> getNeighbours() {
-        Vector<int[]> neighbours = new Vector<>();
-        int[][] directions = {{-1,-1}, {-1,0}, {0,-1}, {0,1}, {1,0}, {1,1}};
-        for (int i = 0; i < 6; i++) {
-            int newX = currentX + directions[i][0];
-            int newY = currentY + directions[i][1];
-            if (newX >= 0 && newX < game.getSize() && newY >= 0 && newY < game.getSize()) {
-                int[] neighbour = {newX, newY};
-                neighbours.add(neighbour);
-            }
+    public abstract void playGame();
+
+    /**
+     * Prints the outcome of the game and remembers it.
+     * @param result one of ALIVE, DEAD or NOT_TERMINATED
+     */
+    protected void reportResult(String result) {
+        this.result = result;
+        out.println("Result: " + result);
+        if (metrics != null) {
+            AgentMetrics.publish(getClass().getSimpleName(), metrics);
+        }
+        if (reported && gameEvent.shouldCommit()) {
+            gameEvent.agent = getClass().getSimpleName();
+            gameEvent.outcome = result;
+            gameEvent.probes = game.getNumCellsProbed();
+            gameEvent.flags = game.getNumFlags();
+            gameEvent.commit();
         }
-        return neighbours;
     }
 
     /**
-     * Gets the neighbouring cells of a specific cell.
-     * @param X The X coordinate of the cell.
-     * @param Y The Y coordinate of the cell.
-     * @return A vector of int arrays representing the neighbouring cells.
+     * Returns the metrics of this game.
+     * @return the metrics, or null if metrics were off when the agent was created
      */
-    public Vector<int[]> getNeighbours(int X, int Y) {
-        Vector<int[]> neighbours = new Vector<>();
-        int[][] directions = {{-1,-1}, {-1,0}, {0,-1}, {0,1}, {1,0}, {1,1}};
-        for (int i = 0; i < 6; i++) {
-            int newX = X + directions[i][0];
-            int newY = Y + directions[i][1];
-            if (newX >= 0 && newX < game.getSize() && newY >= 0 && newY < game.getSize()) {
-                int[] neighbour = {newX, newY};
-                neighbours.add(neighbour);
-            }
+    public AgentMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the outcome reported at the end of the game.
+     * @return one of ALIVE, DEAD or NOT_TERMINATED, or null if the game has not ended
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the number of SAT solver calls (backbone computations) made by the agent.
+     * @return the number of solver calls, 0 for agents that do not use a solver
+     */
+    public int getSolverCalls() {
+        return 0;
+    }
+
+    /**
+     * Sets the stream the agent prints the game state and the outcome to.
+     * @param out the stream to print to
+     */
+    public void setOutput(PrintStream out) {
+        this.out = out;
+        this.renderer = new BoardRenderer(out, renderer.getMode());
+    }
+
+    /**
+     * Sets how the game state is drawn (see BoardRenderer).
+     * @param mode FULL for the whole board, DIFF for the changed cells, SILENT for nothing
+     */
+    public void setRenderMode(BoardRenderer.Mode mode) {
+        this.renderer = new BoardRenderer(out, mode);
+    }
+
+    /**
+     * Prints out the current state of the game.
+     */
+    public void displayGameState() {
+        if (renderer.getMode() != BoardRenderer.Mode.SILENT) {
+            renderer.render(game.getGameState());
         }
-        return neighbours;
+    }
+
+    /**
+     * Stops the agent from reporting its game: no metrics are kept and no flight recorder event is
+     * recorded. For games that are played as part of another job, such as validating a generated board.
+     */
+    public void disableReporting() {
+        this.metrics = null;
+        this.reported = false;
+    }
+
+    /**
+     * Sets whether a zero region is revealed in one batched game update instead of one probe per cell.
+     * @param batchZeroReveal true to reveal zero regions in batch
+     */
+    public void setBatchZeroReveal(boolean batchZeroReveal) {
+        this.batchZeroReveal = batchZeroReveal;
     }
 
     /**
      * Adds neighbouring unprobed cells to the probe queue.
+     * Each cell is queued at most once, membership is tested on the queued bitset.
+     * @param id the linear index of the cell whose neighbours are added
      */
-    protected void addCellstoProbeQueue() {
-        Vector<int[]> neighbours = getNeighbours();
-        for (int[] coord: neighbours) {
-            if (!containsArray(cellsToProbe, coord) && !game.getCell(coord[0], coord[1]).isProbed()) {
-                cellsToProbe.add(coord);
+    protected void addCellstoProbeQueue(int id) {
+        Neighbourhood nb = game.getNeighbourhood();
+        for (int k = nb.start(id); k < nb.end(id); k++) {
+            int n = nb.neighbour(k);
+            if (!game.isProbed(n) && (queued[n >>> 6] & (1L << n)) == 0) {
+                queued[n >>> 6] |= 1L << n;
+                cellsToProbe.addLast(n);
             }
         }
     }
@@ -92,64 +180,136 @@ public class Agent {
      * @return the current state of the cell at the specified (x,y) coordinate
      */
     protected char probe(int x, int y) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        InferenceEvents.Probe event = InferenceEvents.PROBE.isEnabled() ? new InferenceEvents.Probe() : null;
+        if (event != null) {
+            event.begin();
+        }
         char info = game.getCellState(x, y);
         game.updateCells(x, y, info);
+        onCellChanged(x * game.getSize() + y);
+        if (metrics != null) {
+            metrics.count(AgentMetrics.Counter.PROBES, 1);
+            metrics.time(AgentMetrics.Timer.PROBE, start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.cell = x * game.getSize() + y;
+            event.info = info;
+            event.commit();
+        }
         return info;
     }
 
+    /**
+     * Called after a cell has been probed or flagged by this agent.
+     * Agents that keep incremental state about the board override this to update it.
+     * @param id the linear index of the cell that changed
+     */
+    protected void onCellChanged(int id) {
+    }
+
     /**
      * Recursively probes all the adjacent cells to the current cell that have a state of '0'.
      * Since all neighbours of 0 are safe
+     * The flood fill visits every cell of the region once. In batch mode the region is collected
+     * first and revealed with a single game update.
      * @param info the state of the current cell
      */
     protected void recursivelyProbeZeros(char info) {
-        addCellstoProbeQueue();
+        int size = game.getSize();
+        if (queued == null) {
+            queued = new long[(size * size + 63) >>> 6];
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        int probedBefore = game.getNumCellsProbed();
+        InferenceEvents.ZeroFlood event =
+                InferenceEvents.ZERO_FLOOD.isEnabled() ? new InferenceEvents.ZeroFlood() : null;
+        if (event != null) {
+            event.begin();
+        }
+        zeroRegion.clear();
+        addCellstoProbeQueue(currentX * size + currentY);
 
         while (!cellsToProbe.isEmpty()) {
-            int[] coord = cellsToProbe.remove(0);
-            this.currentX = coord[0];
-            this.currentY = coord[1];
-            info = probe(this.currentX,this.currentY);
+            int id = cellsToProbe.pollFirst();
+            this.currentX = id / size;
+            this.currentY = id % size;
+            if (batchZeroReveal) {
+                // the cell stays marked as queued until the region is revealed
+                zeroRegion.addLast(id);
+                info = game.getCellState(this.currentX, this.currentY);
+            } else {
+                queued[id >>> 6] &= ~(1L << id);
+                info = probe(this.currentX, this.currentY);
+            }
             if (info == '0') {
-                addCellstoProbeQueue();
+                addCellstoProbeQueue(id);
+            }
+        }
+
+        if (!zeroRegion.isEmpty()) {
+            game.revealCells(zeroRegion);
+            // each revealed cell counts as a probe, as it does when the cells are probed one at a time
+            boolean recordProbes = InferenceEvents.PROBE.isEnabled();
+            for (int i = 0; i < zeroRegion.size(); i++) {
+                int id = zeroRegion.get(i);
+                queued[id >>> 6] &= ~(1L << id);
+                onCellChanged(id);
+                if (recordProbes) {
+                    InferenceEvents.Probe probeEvent = new InferenceEvents.Probe();
+                    if (probeEvent.shouldCommit()) {
+                        probeEvent.cell = id;
+                        probeEvent.info = game.getCellState(id / size, id % size);
+                        probeEvent.commit();
+                    }
+                }
+            }
+            if (metrics != null) {
+                metrics.count(AgentMetrics.Counter.PROBES, zeroRegion.size());
             }
         }
+
+        if (metrics != null) {
+            metrics.count(AgentMetrics.Counter.ZERO_FLOODS, 1);
+            metrics.count(AgentMetrics.Counter.ZERO_FLOOD_CELLS, game.getNumCellsProbed() - probedBefore);
+            metrics.time(AgentMetrics.Timer.ZERO_FLOOD, start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.cells = game.getNumCellsProbed() - probedBefore;
+            event.commit();
+        }
     }
 
     /**
-     * Determines whether a vector of integer arrays contains a specified array.
-     * @param vec the vector of integer arrays to search
-     * @param arr the array to search for in the vector
-     * @return true if the vector contains the specified array, false otherwise
+     * Returns the count of the neighbours of a cell that are not flagged and not probed
+     * @param id the linear index of the cell
+     * @return the number of unmarked neighbours
      */
-    protected static boolean containsArray(Vector<int[]> vec, int[] arr) {
-        for (int[] vecArr : vec) {
-            if (java.util.Arrays.equals(vecArr, arr)) {
-                return true;
+    protected int countUnmarkedNeighbours(int id) {
+        Neighbourhood nb = game.getNeighbourhood();
+        int count = 0;
+        for (int k = nb.start(id); k < nb.end(id); k++) {
+            if (game.isUnmarked(nb.neighbour(k))) {
+                count += 1;
             }
         }
-        return false;
+        return count;
     }
 
     /**
-     * Returns the count of all the cells that are not flagged and not probed
-     * @param probedNeighbour: the center cell for whose neighbours have to be investigated1
-     * @return
+     * Returns the count of the neighbours of a cell that are flagged
+     * @param id the linear index of the cell
+     * @return the number of flagged neighbours
      */
-    protected int getUnprobedUnflagCount(int[] probedNeighbour) {
-        int unprobedUnflagCount = 0;
-        int[][] directions = {{-1,-1}, {-1,0}, {0,-1}, {0,1}, {1,0}, {1,1}};
-        for (int i = 0; i < 6; i++) {
-            int newX = probedNeighbour[0] + directions[i][0];
-            int newY = probedNeighbour[1] + directions[i][1];
-            if (newX >= 0 && newX < game.getSize() && newY >= 0 && newY < game.getSize()) {
-                int[] neighbour = {newX, newY};
-                if (!game.getCell(neighbour[0],neighbour[1]).isFlagged() && !game.getCell(neighbour[0],neighbour[1]).isProbed()) {
-                    unprobedUnflagCount += 1;
-                }
+    protected int countFlaggedNeighbours(int id) {
+        Neighbourhood nb = game.getNeighbourhood();
+        int count = 0;
+        for (int k = nb.start(id); k < nb.end(id); k++) {
+            if (game.isFlagged(nb.neighbour(k))) {
+                count += 1;
             }
         }
-        return unprobedUnflagCount;
+        return count;
     }
 
     /**
@@ -158,26 +318,59 @@ public class Agent {
      */
     protected void setFlag(int [] coord) {
         game.putFlag(coord);
+        if (metrics != null) {
+            metrics.count(AgentMetrics.Counter.FLAGS, 1);
+        }
+        onCellChanged(coord[0] * game.getSize() + coord[1]);
     }
 
     /**
-     * Returns a vector of all neighbouring cells that are probed of the specified unprobed cell.
-     * @param unprobedCell the (x,y) coordinates of the unprobed cell
-     * @return a vector containing the (x,y) coordinates of all the probed neighboring cells
+     * Applies the single point strategy to one unprobed cell using the clues of its probed neighbours.
+     * The cell is probed if a neighbour has all its tornadoes flagged (all free neighbours),
+     * and flagged if a neighbour has as many missing tornadoes as unmarked neighbours (all marked neighbours).
+     * @param id the linear index of the unprobed cell
+     * @return 'p' if the cell was probed, 'f' if it was flagged, ' ' if no rule applied
      */
-    protected Vector<int[]> getProbedNeighbours(int[] unprobedCell) {
-        Vector<int[]> probedNeighbours = new Vector<>();
-        int[][] directions = {{-1,-1}, {-1,0}, {0,-1}, {0,1}, {1,0}, {1,1}};
-        for (int i = 0; i < 6; i++) {
-            int newX = unprobedCell[0] + directions[i][0];
-            int newY = unprobedCell[1] + directions[i][1];
-            if (newX >= 0 && newX < game.getSize() && newY >= 0 && newY < game.getSize()) {
-                int[] neighbour = {newX, newY};
-                if (game.getCell(neighbour[0],neighbour[1]).isProbed()) {
-                    probedNeighbours.add(neighbour);
-                }
+    protected char singlePointStep(int id) {
+        if (metrics != null) {
+            metrics.count(AgentMetrics.Counter.SPS_EVALUATIONS, 1);
+        }
+        Neighbourhood nb = game.getNeighbourhood();
+        for (int k = nb.start(id); k < nb.end(id); k++) {
+            int n = nb.neighbour(k);
+            if (!game.isProbed(n)) {
+                continue;
+            }
+            int clues = Character.getNumericValue(game.getInfo(n));
+            int flagsCount = countFlaggedNeighbours(n);
+            if (clues == flagsCount) {
+                return applyForced(id, PatternCache.SAFE);
+            } else if (clues - flagsCount == countUnmarkedNeighbours(n)) {
+                return applyForced(id, PatternCache.TORNADO);
+            }
+        }
+        return ' ';
+    }
+
+    /**
+     * Probes a cell known to be safe, with the zero flood fill, or flags a cell known to be a tornado.
+     * @param id the linear index of an unmarked cell
+     * @param forced PatternCache.SAFE, PatternCache.TORNADO or PatternCache.UNKNOWN
+     * @return 'p' if the cell was probed, 'f' if it was flagged, ' ' otherwise
+     */
+    protected char applyForced(int id, int forced) {
+        if (forced == PatternCache.SAFE) {
+            this.currentX = id / game.getSize();
+            this.currentY = id % game.getSize();
+            char info = probe(this.currentX, this.currentY);
+            if (info == '0') {
+                recursivelyProbeZeros(info);
             }
+            return 'p';
+        } else if (forced == PatternCache.TORNADO) {
+            setFlag(new int[] {id / game.getSize(), id % game.getSize()});
+            return 'f';
         }
-        return probedNeighbours;
+        return ' ';
     }
 }
@@ -0,0 +1,259 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.function.Supplier;
+
+/**
+ * AgentBenchmark measures the agents, their inference stages and the Game operations.
+ * Every benchmark prepares a fresh state before each invocation, outside the timed region,
+ * runs warm-up invocations first, and reports throughput, latency percentiles, the bytes
+ * allocated per invocation by the benchmark thread, and the collections that happened while it ran.
+ *
+ * Usage: java AgentBenchmark [iterations] [filter]
+ * Only the benchmarks whose name contains the filter are run.
+ */
+public class AgentBenchmark {
+    private static final PrintStream SILENT = new PrintStream(OutputStream.nullOutputStream());
+    private static final int[] GENERATED_SIZES = {16, 32, 64}; // generated boards beyond the World sizes
+    private static final double GENERATED_DENSITY = 0.1;
+
+    private final int iterations; // measured invocations of every benchmark
+    private final int warmup; // invocations run before measuring
+    private final String filter;
+    private long sink; // consumes results so the JIT cannot drop the benchmarked work
+
+    public AgentBenchmark(int iterations, String filter) {
+        this.iterations = iterations;
+        this.warmup = Math.max(1, iterations / 2);
+        this.filter = filter;
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        String filter = args.length > 1 ? args[1] : "";
+        new AgentBenchmark(iterations, filter).runAll();
+    }
+
+    /**
+     * Runs every benchmark matching the filter and prints one line per benchmark.
+     */
+    public void runAll() {
+        System.out.printf("%-32s %8s %12s %12s %12s %12s %14s %6s %8s%n",
+                "benchmark", "ops", "ops/s", "mean us", "p50 us", "p99 us", "alloc B/op", "gc", "gc ms");
+
+        // whole games on every World size class
+        for (String sizeClass : new String[] {"TEST", "SMALL", "MEDIUM", "LARGE"}) {
+            List<World> worlds = new ArrayList<>();
+            for (World world : World.values()) {
+                if (world.name().startsWith(sizeClass)) {
+                    worlds.add(world);
+                }
+            }
+            for (String agent : new String[] {"P1", "P2", "P3"}) {
+                int[] next = {0};
+                measure("game." + agent + "." + sizeClass, () -> {
+                    World world = worlds.get(next[0]++ % worlds.size());
+                    Game game = new Game(world.map);
+                    return () -> play(agent, game);
+                });
+            }
+        }
+
+        // whole games on generated boards larger than LARGE
+        for (int size : GENERATED_SIZES) {
+            for (String agent : new String[] {"P2", "P3"}) {
+                long[] seed = {0};
+                measure("game." + agent + ".gen" + size, () -> {
+                    Game game = BoardGenerator.generate(size, GENERATED_DENSITY, seed[0]++);
+                    return () -> play(agent, game);
+                });
+            }
+        }
+
+        // inference primitives on a position after the two hints have been probed
+        measure("intermediate.clueConstraint", () -> {
+            IntermediateAgent agent = openedAgent(World.LARGE3);
+            Vector<Cell> probed = agent.game.getProbedCells();
+            return () -> {
+                for (Cell cell : probed) {
+                    if (agent.countUnmarkedNeighbours(cell.getId()) > 0) {
+                        sink += agent.clueConstraint(cell.getId()).length;
+                    }
+                }
+            };
+        });
+        measure("intermediate.encode", () -> {
+            IntermediateAgent agent = openedAgent(World.LARGE3);
+            Vector<Cell> probed = agent.game.getProbedCells();
+            return () -> {
+                SatSession session = new SatSession();
+                for (Cell cell : probed) {
+                    if (agent.countUnmarkedNeighbours(cell.getId()) > 0) {
+                        session.addExactly(agent.clueConstraint(cell.getId()));
+                    }
+                }
+                sink += session.getSolverCalls();
+            };
+        });
+        measure("intermediate.convertKB", () -> {
+            IntermediateAgent agent = openedAgent(World.LARGE3);
+            Vector<Cell> probed = agent.game.getProbedCells();
+            return () -> sink += agent.convertKB(probed).length();
+        });
+        measure("intermediate.frontierComponents", () -> {
+            IntermediateAgent agent = openedAgent(World.LARGE3);
+            return () -> sink += agent.getFrontierComponents().size();
+        });
+        measure("intermediate.componentBackbones", () -> {
+            IntermediateAgent agent = openedAgent(World.LARGE3);
+            Vector<FrontierComponent> components = agent.getFrontierComponents();
+            return () -> {
+                for (FrontierComponent component : components) {
+                    try {
+                        sink += component.call().length;
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        });
+
+        // zero flood fill over a large open region
+        for (boolean batch : new boolean[] {false, true}) {
+            measure("agent.recursivelyProbeZeros" + (batch ? ".batch" : ""), () -> {
+                Game game = BoardGenerator.generate(128, 0.02, 1);
+                BasicAgent agent = new BasicAgent(game, 0, 0, false);
+                agent.setOutput(SILENT);
+                agent.setBatchZeroReveal(batch);
+                return () -> {
+                    agent.probe(0, 0);
+                    agent.recursivelyProbeZeros('0');
+                    sink += game.getNumCellsProbed();
+                };
+            });
+        }
+
+        // bulk Game scans
+        measure("game.getUnmarkedCells", () -> {
+            IntermediateAgent agent = openedAgent(World.LARGE3);
+            return () -> sink += agent.game.getUnmarkedCells().size();
+        });
+        measure("game.countUnmarked", () -> {
+            Game game = BoardGenerator.generate(1024, 0.1, 1);
+            return () -> sink += game.countUnmarked();
+        });
+
+        // hypothetical probes undone through the journal, on a board too large to copy per move
+        measure("game.markRollback", () -> {
+            Game game = BoardGenerator.generate(256, 0.1, 1);
+            BasicAgent agent = new BasicAgent(game, 0, 0, false);
+            agent.setOutput(SILENT);
+            agent.probe(0, 0);
+            agent.recursivelyProbeZeros('0');
+            return () -> {
+                for (int id = 0; id < 1000; id++) {
+                    game.mark();
+                    if (game.isUnmarked(id * 61 % (256 * 256))) {
+                        agent.probe(id * 61 % (256 * 256) / 256, id * 61 % 256);
+                    }
+                    sink += game.getNumCellsProbed();
+                    game.rollback();
+                }
+            };
+        });
+
+        System.out.println("pattern cache " + PatternCache.shared(PatternCache.Rule.LOCAL).report());
+        System.out.println("(sink " + sink + ")");
+    }
+
+    /**
+     * Plays a whole game silently with the given agent.
+     * @param agent the agent, "P1", "P2" or "P3"
+     * @param game the game to play
+     */
+    private static void play(String agent, Game game) {
+        Agent player = Agent.create(agent, game, false);
+        player.setOutput(SILENT);
+        player.playGame();
+    }
+
+    /**
+     * Returns an intermediate agent on the given world with the two hints probed.
+     * @param world the board
+     * @return the agent
+     */
+    private static IntermediateAgent openedAgent(World world) {
+        Game game = new Game(world.map);
+        IntermediateAgent agent = new IntermediateAgent(game, 0, 0, false);
+        agent.setOutput(SILENT);
+        if (agent.probe(0, 0) == '0') {
+            agent.recursivelyProbeZeros('0');
+        }
+        int[] center = game.center();
+        agent.currentX = center[0];
+        agent.currentY = center[1];
+        if (agent.probe(center[0], center[1]) == '0') {
+            agent.recursivelyProbeZeros('0');
+        }
+        return agent;
+    }
+
+    /**
+     * Measures one benchmark. The setup runs before every invocation and is not timed.
+     * @param name the name of the benchmark
+     * @param setup creates the state of one invocation and returns the work to time
+     */
+    private void measure(String name, Supplier<Runnable> setup) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        for (int i = 0; i < warmup; i++) {
+            setup.get().run();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] gc = gcTotals();
+        long[] times = new long[iterations];
+        long allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            Runnable work = setup.get();
+            long allocBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            work.run();
+            times[i] = System.nanoTime() - start;
+            allocated += threads.getThreadAllocatedBytes(threadId) - allocBefore;
+        }
+        long[] gcAfter = gcTotals();
+
+        Arrays.sort(times);
+        long total = 0;
+        for (long t : times) {
+            total += t;
+        }
+        double meanUs = total / 1e3 / iterations;
+        System.out.printf("%-32s %8d %12.1f %12.1f %12.1f %12.1f %14d %6d %8d%n",
+                name, iterations, iterations / (total / 1e9), meanUs,
+                Tournament.percentile(times, 0.50) / 1e3, Tournament.percentile(times, 0.99) / 1e3,
+                allocated / iterations, gcAfter[0] - gc[0], gcAfter[1] - gc[1]);
+    }
+
+    /**
+     * Returns the total number of collections and the total collection time in ms of all collectors.
+     * @return {count, time}
+     */
+    private static long[] gcTotals() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[] {count, time};
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * AgentMetrics counts and times the work of one game: probes and flags, zero flood fills,
+ * SPS evaluations, knowledge base updates, encoded constraints, backbone computations
+ * with the cells they force, and the cells decided by the cheaper stages before the solver.
+ *
+ * Metrics are off unless the JVM runs with -Dagent.metrics=true or setEnabled(true) is called
+ * before the agents are created. When they are off an agent holds no metrics object, so every
+ * instrumented site costs a null check. The same sites also emit the JDK Flight Recorder events
+ * of InferenceEvents, which cost nothing unless a recording is running.
+ *
+ * At the end of a game the agent publishes its metrics to the registry, which sums them by agent class.
+ */
+public class AgentMetrics {
+    /**
+     * The counted quantities.
+     */
+    public enum Counter {
+        PROBES, FLAGS, ZERO_FLOODS, ZERO_FLOOD_CELLS, SPS_EVALUATIONS, KB_UPDATES, KB_CONSTRAINTS,
+        ENCODES, FORMULA_LITERALS, BACKBONES, BACKBONE_TORNADOES,
+        BACKBONE_SAFE, SUBSET_PAIRS, SUBSET_TORNADOES, SUBSET_SAFE, LINEAR_TORNADOES, LINEAR_SAFE,
+        SAT_TIMEOUTS, FALLBACKS
+    }
+
+    /**
+     * The timed operations.
+     */
+    public enum Timer {
+        PROBE, ZERO_FLOOD, KB_UPDATE, ENCODE, BACKBONE, SUBSET, LINEAR
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean("agent.metrics");
+    private static final Map<String, AgentMetrics> REGISTRY = new TreeMap<>(); // totals by agent class, guarded by itself
+
+    // the per-component sessions of a game run on worker threads, so the values are atomic
+    private final AtomicLongArray counts = new AtomicLongArray(Counter.values().length);
+    private final AtomicLongArray nanos = new AtomicLongArray(Timer.values().length);
+    private final AtomicLongArray timed = new AtomicLongArray(Timer.values().length);
+    private long games; // games summed into this object, for the registry
+
+    /**
+     * Returns whether new agents collect metrics.
+     * @return true if metrics are on
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns the collection of metrics on or off for the agents created from now on.
+     * @param enabled true to collect metrics
+     */
+    public static void setEnabled(boolean enabled) {
+        AgentMetrics.enabled = enabled;
+    }
+
+    /**
+     * Returns new metrics for one game, or null if metrics are off.
+     * @return the metrics, or null
+     */
+    public static AgentMetrics create() {
+        return enabled ? new AgentMetrics() : null;
+    }
+
+    /**
+     * Adds to a counter.
+     * @param counter the counter
+     * @param delta the amount to add
+     */
+    public void count(Counter counter, long delta) {
+        counts.addAndGet(counter.ordinal(), delta);
+    }
+
+    /**
+     * Adds one timed operation.
+     * @param timer the operation
+     * @param startNanos the System.nanoTime() when the operation started
+     */
+    public void time(Timer timer, long startNanos) {
+        nanos.addAndGet(timer.ordinal(), System.nanoTime() - startNanos);
+        timed.incrementAndGet(timer.ordinal());
+    }
+
+    /**
+     * Returns the value of a counter.
+     * @param counter the counter
+     * @return the value
+     */
+    public long get(Counter counter) {
+        return counts.get(counter.ordinal());
+    }
+
+    /**
+     * Returns the total time spent in an operation.
+     * @param timer the operation
+     * @return the time in nanoseconds
+     */
+    public long getNanos(Timer timer) {
+        return nanos.get(timer.ordinal());
+    }
+
+    /**
+     * Adds the metrics of a finished game to the registry.
+     * @param agent the name the metrics are summed under, usually the agent class
+     * @param metrics the metrics of the game
+     */
+    public static void publish(String agent, AgentMetrics metrics) {
+        synchronized (REGISTRY) {
+            AgentMetrics total = REGISTRY.computeIfAbsent(agent, a -> new AgentMetrics());
+            for (int i = 0; i < total.counts.length(); i++) {
+                total.counts.addAndGet(i, metrics.counts.get(i));
+            }
+            for (int i = 0; i < total.nanos.length(); i++) {
+                total.nanos.addAndGet(i, metrics.nanos.get(i));
+                total.timed.addAndGet(i, metrics.timed.get(i));
+            }
+            total.games++;
+        }
+    }
+
+    /**
+     * Returns a copy of the registry.
+     * @return the summed metrics by agent class
+     */
+    public static Map<String, AgentMetrics> registry() {
+        synchronized (REGISTRY) {
+            return new TreeMap<>(REGISTRY);
+        }
+    }
+
+    /**
+     * Empties the registry.
+     */
+    public static void resetRegistry() {
+        synchronized (REGISTRY) {
+            REGISTRY.clear();
+        }
+    }
+
+    /**
+     * Prints the registry, one line per agent class with the counters and the time per operation.
+     * @param out the stream to print to
+     */
+    public static void printRegistry(PrintStream out) {
+        for (Map.Entry<String, AgentMetrics> entry : registry().entrySet()) {
+            out.println("# metrics " + entry.getKey() + " games=" + entry.getValue().games + " " + entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the counters, and the count and total milliseconds of each timed operation.
+     * @return the metrics as key=value pairs
+     */
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            stringBuilder.append(counter.name().toLowerCase()).append('=').append(get(counter)).append(' ');
+        }
+        for (Timer timer : Timer.values()) {
+            stringBuilder.append(timer.name().toLowerCase()).append("_ms=")
+                    .append(String.format("%.3f", getNanos(timer) / 1e6)).append(' ');
+        }
+        return stringBuilder.toString().trim();
+    }
+}
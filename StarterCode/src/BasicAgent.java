@@ -63,11 +63,11 @@ public class BasicAgent extends Agent {
         }
 
         // print final map
-        System.out.println("Final map");
+        out.println("Final map");
         displayGameState();
 
         // print game outcome
-        game.printGameOutcome(this.loss);
+        reportResult(this.loss ? DEAD : ALIVE);
 
     }
 }
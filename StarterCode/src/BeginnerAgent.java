@@ -1,16 +1,16 @@
-import java.util.Vector;
-
 /**
  * The BeginnerAgent class represents an agent that applies the single point strategy (SPS) to play the tornado sweeper game.
  * This agent probes cells until it finds a non-zero cell, then applies the point strategy to identify safe cells and flag mines.
  * If it probes a cell with a '0' clue, it recursively probes all neighbouring cells with '0' clues.
  * The agent also probes the center cell of the game board.
+ * SPS is driven by a worklist: only cells next to a clue that changed are evaluated again,
+ * and the agent stops when no such cell is left.
  */
 public class BeginnerAgent extends  Agent{
 
-    private int steps = 0;
-    private int maxSteps = 100; // used to determine if the agent is stuck in a loop
-    Vector<int[]> unprobedCells = new Vector<>();
+    private IntDeque dirtyCells = new IntDeque(64); // unmarked cells whose neighbourhood changed since they were last evaluated
+    private long[] dirty; // bitset of the cells in dirtyCells
+    private PatternCache patternCache; // answers SPS from earlier identical windows, null to always evaluate
 
     /**
      * Constructs a BeginnerAgent object.
@@ -21,6 +21,16 @@ public class BeginnerAgent extends  Agent{
      */
     public BeginnerAgent(Game game, int startX, int startY, boolean verbose) {
         super(game, startX, startY, verbose);
+        this.dirty = new long[(game.getSize() * game.getSize() + 63) >>> 6];
+    }
+
+    /**
+     * Sets the cache that SPS is looked up in before it is evaluated. The cache must use the SPS rule,
+     * so the agent makes the same moves with or without it.
+     * @param patternCache the cache, or null to evaluate SPS on every cell
+     */
+    public void setPatternCache(PatternCache patternCache) {
+        this.patternCache = patternCache;
     }
 
     /**
@@ -44,83 +54,76 @@ public class BeginnerAgent extends  Agent{
             recursivelyProbeZeros(info);
         }
 
-        //not '0' apply point strategy
-        unprobedCells = game.getUnprobedUnFlaggedCells();
-
+        //not '0' apply point strategy, the probes above have filled the worklist
         applySPS(info);
 
-        System.out.println("Final map");
+        out.println("Final map");
         displayGameState();
 
-        if (steps!= maxSteps) {
+        if (game.countUnmarked() == 0) {
             this.loss = !game.hasFoundAllTornadoes();
             // print game outcome
-            game.printGameOutcome(this.loss);
+            reportResult(this.loss ? DEAD : ALIVE);
         } else {
-            System.out.println("Result: Agent not terminated");
+            // SPS reached its fixpoint with cells left it cannot decide
+            reportResult(NOT_TERMINATED);
         }
     }
 
     /**
-     * Applies the singlr point strategy to the unprobed and unflagged cells.
+     * Applies the single point strategy to the dirty cells until no dirty cell is left.
      *    @param info the clue of the last probed cell
      */
     private void applySPS(char info) {
-        while(!unprobedCells.isEmpty()) {
-            int[] unprobedCell = unprobedCells.remove(0);
-            Vector<int[]> probedNeighbours = getProbedNeighbours(unprobedCell);
-            for (int[] probedNeighbour: probedNeighbours) {
-                int clues = Character.getNumericValue(game.getCell(probedNeighbour).getInfo());
-                int flagsCount = getCountNeighbourFlags(probedNeighbour);
-                int unprobeUnflagCount = getUnprobedUnflagCount(probedNeighbour);
-                if (clues == flagsCount) {
-                    info = probe(unprobedCell[0], unprobedCell[1]);
-                    if (info == '0') {
-                        this.currentX = unprobedCell[0];
-                        this.currentY = unprobedCell[1];
-                        recursivelyProbeZeros(info);
-                    }
-                    break;
-                } else if (clues - flagsCount == unprobeUnflagCount) {
-                    setFlag(unprobedCell);
-                    break;
+        while(!dirtyCells.isEmpty()) {
+            int id = dirtyCells.pollFirst();
+            dirty[id >>> 6] &= ~(1L << id);
+            if (game.isUnmarked(id)) {
+                if (patternCache == null) {
+                    singlePointStep(id);
                 } else {
-                    continue;
-                }
-            }
-            if (!game.getCell(unprobedCell).isFlagged() )  {
-                if (!game.getCell(unprobedCell).isProbed()) {
-                    unprobedCells.add(unprobedCell);
+                    if (metrics != null) {
+                        metrics.count(AgentMetrics.Counter.SPS_EVALUATIONS, 1);
+                    }
+                    applyForced(id, patternCache.lookup(game, id));
                 }
             }
-            steps +=1;
-
-            if (steps == maxSteps) {
-                break;
-            }
         }
     }
 
-
     /**
-     *  Returents the count of the flags surrounding a cell: probedNeighbour
-     * @param probedNeighbour: the center cell for whose neighbours have to be investigated1
-     * @return
+     * Marks as dirty the unmarked cells whose SPS evaluation depends on the changed cell:
+     * its own unmarked neighbours, which gain a clue, and the unmarked neighbours of its
+     * probed neighbours, whose flag and unknown counts changed.
+     * @param id the linear index of the cell that changed
      */
-    private int getCountNeighbourFlags(int[] probedNeighbour) {
-        int neighbourFlagsCount = 0;
-        int[][] directions = {{-1,-1}, {-1,0}, {0,-1}, {0,1}, {1,0}, {1,1}};
-        for (int i = 0; i < 6; i++) {
-            int newX = probedNeighbour[0] + directions[i][0];
-            int newY = probedNeighbour[1] + directions[i][1];
-            if (newX >= 0 && newX < game.getSize() && newY >= 0 && newY < game.getSize()) {
-                int[] neighbour = {newX, newY};
-                if (game.getCell(neighbour[0],neighbour[1]).isFlagged()) {
-                    neighbourFlagsCount += 1;
+    @Override
+    protected void onCellChanged(int id) {
+        Neighbourhood nb = game.getNeighbourhood();
+        for (int k = nb.start(id); k < nb.end(id); k++) {
+            int n = nb.neighbour(k);
+            if (game.isUnmarked(n)) {
+                markDirty(n);
+            } else if (game.isProbed(n)) {
+                for (int l = nb.start(n); l < nb.end(n); l++) {
+                    int m = nb.neighbour(l);
+                    if (game.isUnmarked(m)) {
+                        markDirty(m);
+                    }
                 }
             }
         }
-        return neighbourFlagsCount;
+    }
+
+    /**
+     * Adds a cell to the worklist unless it is already waiting in it.
+     * @param id the linear index of the cell
+     */
+    private void markDirty(int id) {
+        if ((dirty[id >>> 6] & (1L << id)) == 0) {
+            dirty[id >>> 6] |= 1L << id;
+            dirtyCells.addLast(id);
+        }
     }
 
 }
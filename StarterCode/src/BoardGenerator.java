@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * The BoardGenerator class builds tornado maps of any size and tornado density from a seed.
+ * The same (size, density, seed) always gives the same board, and the clues are computed on the
+ * hexagonal neighbourhood used by the agents. The two free hints, [0][0] and the centre, are never tornadoes.
+ *
+ * In no-guess mode every candidate board is played by one of the inference agents and only a board
+ * the agent solves completely is returned, so the board can be solved without guessing.
+ *
+ * Usage: java BoardGenerator size density seed file [P2|P3] [text]
+ */
+public class BoardGenerator {
+    private static final int MAX_ATTEMPTS = 1000; // candidates tried in no-guess mode before giving up
+
+    /**
+     * Generates a random board.
+     * @param size the size of the board
+     * @param density the fraction of the cells, other than the two hints, that hold a tornado
+     * @param seed the seed of the random generator
+     * @return a new game on the generated board
+     */
+    public static Game generate(int size, double density, long seed) {
+        return generate(size, density, new SplittableRandom(seed));
+    }
+
+    /**
+     * Generates a board that the given agent solves without guessing.
+     * Candidates are drawn one after the other from the same seeded generator,
+     * so the result is reproducible.
+     * @param size the size of the board
+     * @param density the fraction of the cells, other than the two hints, that hold a tornado
+     * @param seed the seed of the random generator
+     * @param agent the agent that validates the candidates, "P2" or "P3"
+     * @return a new game on the generated board
+     * @throws IllegalStateException if no solvable board is found within the attempt limit
+     */
+    public static Game generateNoGuess(int size, double density, long seed, String agent) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Game candidate = generate(size, density, random);
+            if (isSolvable(candidate, agent)) {
+                // the validation has played the candidate, so return a fresh game on the same board
+                return new Game(candidate.getMap());
+            }
+        }
+        throw new IllegalStateException("no board solvable by " + agent + " found in " + MAX_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Places the tornadoes uniformly at random, keeping the two hints safe.
+     * @param size the size of the board
+     * @param density the fraction of the cells, other than the two hints, that hold a tornado
+     * @param random the random generator
+     * @return a new game on the generated board
+     */
+    private static Game generate(int size, double density, SplittableRandom random) {
+        if (size < 1 || size > BoardLoader.MAX_SIZE || density < 0 || density >= 1) {
+            throw new IllegalArgumentException("size must be in 1 to " + BoardLoader.MAX_SIZE + " and density in [0, 1)");
+        }
+        int cells = size * size;
+        int hint = 0;
+        int center = (size / 2) * size + size / 2;
+        int free = cells - (center == hint ? 1 : 2);
+        int numTornadoes = (int) Math.round(density * free);
+
+        long[] tornadoes = new long[(cells + 63) >>> 6];
+        int placed = 0;
+        if (numTornadoes <= free / 2) {
+            // sparse boards: draw cells until enough distinct ones are found
+            while (placed < numTornadoes) {
+                int id = random.nextInt(cells);
+                if (id != hint && id != center && (tornadoes[id >>> 6] & (1L << id)) == 0) {
+                    tornadoes[id >>> 6] |= 1L << id;
+                    placed++;
+                }
+            }
+        } else {
+            // dense boards: fill every free cell, then draw the cells to clear
+            for (int id = 0; id < cells; id++) {
+                if (id != hint && id != center) {
+                    tornadoes[id >>> 6] |= 1L << id;
+                }
+            }
+            placed = free;
+            while (placed > numTornadoes) {
+                int id = random.nextInt(cells);
+                if ((tornadoes[id >>> 6] & (1L << id)) != 0) {
+                    tornadoes[id >>> 6] &= ~(1L << id);
+                    placed--;
+                }
+            }
+        }
+        return new Game(size, tornadoes);
+    }
+
+    /**
+     * Plays a candidate board silently with an inference agent, which reports neither metrics nor events.
+     * @param game the candidate game, it is played to the end
+     * @param agent the agent that plays, "P2" or "P3"
+     * @return true if the agent probed every safe cell and flagged every tornado
+     */
+    private static boolean isSolvable(Game game, String agent) {
+        if (!agent.equals("P2") && !agent.equals("P3")) {
+            throw new IllegalArgumentException("unknown validating agent " + agent);
+        }
+        Agent player = Agent.create(agent, game, false);
+        player.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+        player.disableReporting();
+        player.playGame();
+        for (int id = 0; id < game.getSize() * game.getSize(); id++) {
+            if (game.isTornado(id) ? !game.isFlagged(id) : !game.isProbed(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: java BoardGenerator size density seed file [P2|P3] [text]");
+            return;
+        }
+        int size = Integer.parseInt(args[0]);
+        double density = Double.parseDouble(args[1]);
+        long seed = Long.parseLong(args[2]);
+        Path path = Path.of(args[3]);
+        boolean text = false;
+        String agent = null;
+        for (int i = 4; i < args.length; i++) {
+            if (args[i].equals("text")) {
+                text = true;
+            } else {
+                agent = args[i];
+            }
+        }
+
+        Game game = agent == null ? generate(size, density, seed) : generateNoGuess(size, density, seed, agent);
+        if (text) {
+            BoardLoader.writeText(path, game);
+        } else {
+            BoardLoader.writeBinary(path, game);
+        }
+        System.out.println("Generated " + size + "x" + size + " board with " + game.getNumTornadoes() + " tornadoes: " + path);
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The BoardLoader class reads and writes boards stored in files, so boards can be played
+ * without being compiled into the World enum.
+ *
+ * Two formats are supported and told apart by the first bytes of the file:
+ *  - binary: the magic "TSB1", the size of the board as a big-endian int, then one bit per cell
+ *    in linear order (x * size + y), least significant bit first, set for the cells holding a tornado.
+ *    The clues are computed from the tornadoes when the board is loaded.
+ *  - text: one row per line with one character per cell ('0' to '6' or 't'), in the notation
+ *    of the World enum. Spaces, tabs and commas between cells are ignored, as are lines starting with '#'.
+ *
+ * Files are read through a memory-mapped FileChannel, so large boards are not parsed line by line.
+ */
+public class BoardLoader {
+    private static final byte[] MAGIC = {'T', 'S', 'B', '1'}; // header of the binary format
+    static final int MAX_SIZE = 46340; // the largest size whose number of cells fits in an int
+
+    /**
+     * Loads a board file in either format.
+     * @param path the path of the board file
+     * @return a new game on the loaded board
+     * @throws IOException if the file cannot be read or is not a valid board
+     */
+    public static Game load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (isBinary(buffer)) {
+                return readBinary(buffer);
+            }
+            return new Game(readText(buffer));
+        }
+    }
+
+    /**
+     * Returns true if the buffer starts with the magic of the binary format.
+     * @param buffer the content of the file
+     * @return true if the file is in the binary format
+     */
+    private static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a board in the binary format.
+     * @param buffer the content of the file
+     * @return a new game on the board
+     * @throws IOException if the size is out of range or the file is truncated
+     */
+    private static Game readBinary(ByteBuffer buffer) throws IOException {
+        buffer.position(MAGIC.length);
+        if (buffer.remaining() < 4) {
+            throw new IOException("truncated board file, no size");
+        }
+        int size = buffer.getInt();
+        if (size <= 0 || size > MAX_SIZE) {
+            throw new IOException("board size " + size + " out of range 1 to " + MAX_SIZE);
+        }
+        int cells = size * size;
+        if (buffer.remaining() < (cells + 7) / 8) {
+            throw new IOException("truncated board file, expected " + ((cells + 7) / 8) + " bytes of cells");
+        }
+        long[] tornadoes = new long[(cells + 63) >>> 6];
+        ByteBuffer bits = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        int fullWords = cells >>> 6;
+        for (int w = 0; w < fullWords; w++) {
+            tornadoes[w] = bits.getLong(w * 8);
+        }
+        // the last partial word is read byte by byte
+        for (int b = fullWords * 8; b < (cells + 7) / 8; b++) {
+            tornadoes[b >>> 3] |= (bits.get(b) & 0xFFL) << ((b & 7) * 8);
+        }
+        if ((cells & 63) != 0) {
+            tornadoes[fullWords] &= (1L << cells) - 1;
+        }
+        return new Game(size, tornadoes);
+    }
+
+    /**
+     * Reads a board in the text format.
+     * @param buffer the content of the file
+     * @return the map of the board
+     * @throws IOException if there is no row or the rows are not all of the same length as the number of rows
+     */
+    private static char[][] readText(ByteBuffer buffer) throws IOException {
+        // first pass: count the rows, so the map can be filled without intermediate lists
+        int rows = 0;
+        int cellsInRow = 0;
+        boolean comment = false;
+        for (int i = 0; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                if (cellsInRow > 0) {
+                    rows++;
+                }
+                cellsInRow = 0;
+                comment = false;
+            } else if (b == '#' && cellsInRow == 0) {
+                comment = true;
+            } else if (!comment && isCell(b)) {
+                cellsInRow++;
+            }
+        }
+        if (cellsInRow > 0) {
+            rows++;
+        }
+        if (rows == 0) {
+            throw new IOException("no rows in board file");
+        }
+
+        char[][] map = new char[rows][];
+        char[] row = new char[rows];
+        int x = 0;
+        int y = 0;
+        comment = false;
+        for (int i = 0; i <= buffer.limit(); i++) {
+            byte b = i < buffer.limit() ? buffer.get(i) : (byte) '\n';
+            if (b == '\n') {
+                if (y > 0) {
+                    if (y != rows) {
+                        throw new IOException("row " + x + " has " + y + " cells, expected " + rows);
+                    }
+                    map[x++] = row;
+                    row = new char[rows];
+                }
+                y = 0;
+                comment = false;
+            } else if (b == '#' && y == 0) {
+                comment = true;
+            } else if (!comment && isCell(b)) {
+                if (y >= rows) {
+                    throw new IOException("row " + x + " has more than " + rows + " cells");
+                }
+                row[y++] = (char) b;
+            } else if (!comment && b != ' ' && b != '\t' && b != ',' && b != '\r') {
+                throw new IOException("unexpected character '" + (char) b + "' in row " + x);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns true if the byte is the character of a cell in the text format.
+     * @param b the byte
+     * @return true for '0' to '6' and 't'
+     */
+    private static boolean isCell(byte b) {
+        return (b >= '0' && b <= '6') || b == 't';
+    }
+
+    /**
+     * Writes the board of a game in the binary format.
+     * @param path the path of the file to write
+     * @param game the game whose board is written
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeBinary(Path path, Game game) throws IOException {
+        int size = game.getSize();
+        int cells = size * size;
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 4 + (cells + 7) / 8);
+        buffer.put(MAGIC);
+        buffer.putInt(size);
+        int start = buffer.position();
+        for (int id = 0; id < cells; id++) {
+            if (game.isTornado(id)) {
+                int b = start + (id >>> 3);
+                buffer.put(b, (byte) (buffer.get(b) | (1 << (id & 7))));
+            }
+        }
+        buffer.position(0);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Writes the board of a game in the text format, one row per line with cells separated by spaces.
+     * @param path the path of the file to write
+     * @param game the game whose board is written
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeText(Path path, Game game) throws IOException {
+        int size = game.getSize();
+        StringBuilder stringBuilder = new StringBuilder(size * size * 2);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (y > 0) {
+                    stringBuilder.append(' ');
+                }
+                stringBuilder.append(game.getCellState(x, y));
+            }
+            stringBuilder.append('\n');
+        }
+        Files.write(path, stringBuilder.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Creates a game from a command line argument: the name of a World, a generated board written as
+     * gen:size:density:seed or gen:size:density:seed:P2|P3 for a no-guess board, or the path of a board file.
+     * @param name the World name, the generator parameters or the file path
+     * @return a new game on the board
+     * @throws IllegalArgumentException if the generator parameters are missing or not numbers
+     * @throws UncheckedIOException if the argument is not a World and the file cannot be loaded
+     */
+    public static Game fromArgument(String name) {
+        for (World world : World.values()) {
+            if (world.name().equals(name)) {
+                return new Game(world.map);
+            }
+        }
+        if (name.startsWith("gen:")) {
+            String[] parts = name.split(":");
+            if (parts.length < 4) {
+                throw new IllegalArgumentException("expected gen:size:density:seed, got " + name);
+            }
+            int size = Integer.parseInt(parts[1]);
+            double density = Double.parseDouble(parts[2]);
+            long seed = Long.parseLong(parts[3]);
+            if (parts.length > 4) {
+                return BoardGenerator.generateNoGuess(size, density, seed, parts[4]);
+            }
+            return BoardGenerator.generate(size, density, seed);
+        }
+        try {
+            return load(Path.of(name));
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot load board " + name, e);
+        }
+    }
+}
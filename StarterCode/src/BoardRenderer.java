@@ -0,0 +1,189 @@
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * BoardRenderer draws boards on a stream. A frame is built in a reusable buffer and written
+ * with one bulk write, instead of one synchronized print per character.
+ *
+ * Modes:
+ *  - FULL draws the whole board in the format of A3main.printBoard, byte for byte
+ *  - DIFF draws the first board in full, then one line per frame with the cells that changed,
+ *    as "changed: x,y=c x,y=c ...", and nothing for a frame without changes
+ *  - SILENT draws nothing, for batch runs
+ *
+ * The default mode of new renderers is read from the board.render system property
+ * (full, diff or silent) and is FULL when it is not set. An unknown value is reported once on
+ * System.err and also gives FULL.
+ */
+public class BoardRenderer {
+    /**
+     * The rendering modes.
+     */
+    public enum Mode {
+        FULL, DIFF, SILENT
+    }
+
+    private static final String NEWLINE = System.lineSeparator();
+    private static volatile boolean warned; // whether an unknown board.render value was reported
+
+    private final PrintStream out;
+    private final Mode mode;
+    private final StringBuilder frame = new StringBuilder(); // the frame being built, reused
+    private byte[] bytes = new byte[256]; // the encoded frame, reused
+    private char[][] previous; // the last board drawn, for DIFF
+
+    /**
+     * Creates a renderer.
+     * @param out the stream to draw on
+     * @param mode the rendering mode
+     */
+    public BoardRenderer(PrintStream out, Mode mode) {
+        this.out = out;
+        this.mode = mode;
+    }
+
+    /**
+     * Returns the mode set by the board.render system property.
+     * @return the default mode, FULL if the property is not set or is not a mode
+     */
+    public static Mode defaultMode() {
+        String property = System.getProperty("board.render");
+        if (property == null) {
+            return Mode.FULL;
+        }
+        try {
+            return Mode.valueOf(property.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            // called from the field initializer of every agent, so it must not throw
+            if (!warned) {
+                warned = true;
+                System.err.println("unknown board.render " + property + ", expected full, diff or silent; using full");
+            }
+            return Mode.FULL;
+        }
+    }
+
+    /**
+     * Returns the mode of this renderer.
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Draws a board according to the mode.
+     * @param board the board, by row
+     */
+    public void render(char[][] board) {
+        if (mode == Mode.SILENT) {
+            return;
+        }
+        frame.setLength(0);
+        if (mode == Mode.FULL || previous == null || previous.length != board.length) {
+            appendBoard(board, frame);
+        } else {
+            appendChanges(board);
+        }
+        if (mode == Mode.DIFF) {
+            remember(board);
+        }
+        write();
+    }
+
+    /**
+     * Appends a board in the format of A3main.printBoard.
+     * @param board the board, by row
+     * @param frame where the text is appended
+     */
+    public static void appendBoard(char[][] board, StringBuilder frame) {
+        frame.append(NEWLINE);
+        // first line
+        for (int l = 0; l < board.length + 5; l++) {
+            frame.append(' '); // shift to start
+        }
+        for (int j = 0; j < board[0].length; j++) {
+            frame.append(j); // x indexes
+            if (j < 10) {
+                frame.append(' ');
+            }
+        }
+        frame.append(NEWLINE);
+        // second line
+        for (int l = 0; l < board.length + 3; l++) {
+            frame.append(' ');
+        }
+        for (int j = 0; j < board[0].length; j++) {
+            frame.append(" -"); // separator
+        }
+        frame.append(NEWLINE);
+        // the board
+        for (int i = 0; i < board.length; i++) {
+            for (int l = i; l < board.length - 1; l++) {
+                frame.append(' '); // fill with left-hand spaces
+            }
+            if (i < 10) {
+                frame.append(' ');
+            }
+            frame.append(i).append("/ "); // index+separator
+            for (int j = 0; j < board[0].length; j++) {
+                frame.append(board[i][j]).append(' '); // value in the board
+            }
+            frame.append(NEWLINE);
+        }
+        frame.append(NEWLINE);
+    }
+
+    /**
+     * Appends the cells that differ from the previous board, on one line.
+     * @param board the board, by row
+     */
+    private void appendChanges(char[][] board) {
+        for (int i = 0; i < board.length; i++) {
+            for (int j = 0; j < board[i].length; j++) {
+                if (board[i][j] != previous[i][j]) {
+                    frame.append(frame.length() == 0 ? "changed:" : "").append(' ')
+                            .append(i).append(',').append(j).append('=').append(board[i][j]);
+                }
+            }
+        }
+        if (frame.length() > 0) {
+            frame.append(NEWLINE);
+        }
+    }
+
+    /**
+     * Keeps a copy of the board drawn, reusing the rows of the previous copy.
+     * @param board the board, by row
+     */
+    private void remember(char[][] board) {
+        if (previous == null || previous.length != board.length) {
+            previous = new char[board.length][];
+        }
+        for (int i = 0; i < board.length; i++) {
+            if (previous[i] == null || previous[i].length != board[i].length) {
+                previous[i] = new char[board[i].length];
+            }
+            System.arraycopy(board[i], 0, previous[i], 0, board[i].length);
+        }
+    }
+
+    /**
+     * Writes the frame with one bulk write. The characters of a board are ASCII, anything else
+     * is written as '?'.
+     */
+    private void write() {
+        int length = frame.length();
+        if (length == 0) {
+            return;
+        }
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = frame.charAt(i);
+            bytes[i] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+        out.write(bytes, 0, length);
+    }
+}
@@ -1,19 +1,16 @@
 /**
  * The Cell Class represents the Cell on the game board
+ * It is a thin view of one position of the board stored in the Game
  */
 public class Cell {
-    private int x;
-    private int y;
-    private boolean isProbed;
-    private char info;
-    private boolean isFlagged;
+    private final Game game;
+    private final int x;
+    private final int y;
 
-    public Cell(int x, int y) {
+    public Cell(Game game, int x, int y) {
+        this.game = game;
         this.x = x;
         this.y = y;
-        this.isProbed = false;
-        this.info = ' ';
-        this.isFlagged = false;
     }
 
     public int getX() {
@@ -24,27 +21,45 @@ public class Cell {
         return y;
     }
 
+    public int getId() {
+        return x * game.getSize() + y;
+    }
+
     public boolean isProbed() {
-        return isProbed;
+        return game.isProbed(getId());
     }
 
     public void setProbed(boolean isProbed) {
-        this.isProbed = isProbed;
+        game.setProbed(getId(), isProbed);
     }
 
     public char getInfo() {
-        return info;
+        return game.getInfo(getId());
     }
 
     public void setInfo(char info) {
-        this.info = info;
+        game.setInfo(getId(), info);
     }
 
     public boolean isFlagged() {
-        return isFlagged;
+        return game.isFlagged(getId());
     }
 
     public void setFlagged(boolean isFlagged) {
-        this.isFlagged = isFlagged;
+        game.setFlagged(getId(), isFlagged);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Cell)) {
+            return false;
+        }
+        Cell other = (Cell) o;
+        return other.game == game && other.x == x && other.y == y;
+    }
+
+    @Override
+    public int hashCode() {
+        return getId();
     }
 }
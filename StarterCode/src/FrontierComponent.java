@@ -0,0 +1,58 @@
+import org.logicng.datastructures.Tristate;
+
+import java.util.Vector;
+import java.util.concurrent.Callable;
+
+/**
+ * A FrontierComponent is an independent part of the frontier: a set of unknown cells together with
+ * the probed cells whose clues constrain them. Two unknown cells are in the same component if they
+ * share a constraining probed cell, so the tornado queries of one component never depend on another
+ * and each component can be solved on its own, small knowledge base.
+ */
+public class FrontierComponent implements Callable<Tristate[]> {
+    Vector<Cell> clueCells = new Vector<>(); // probed cells with unknown neighbours in this component
+    Vector<Cell> unknownCells = new Vector<>(); // unknown cells of this component
+    Vector<int[]> constraints = new Vector<>(); // the clue constraint of each clue cell, as built by IntermediateAgent.clueConstraint
+    Tristate[] known; // cells of unknownCells already known to be forced, null entries are solved, null to solve all
+    int solverCalls; // queries answered when the component was solved
+    AgentMetrics metrics; // metrics of the game, null when metrics are off
+    int parallelism = 1; // number of sessions the open cells may be split over (see QueryPortfolio)
+    long deadline; // time in milliseconds since the epoch at which solving gives up, 0 for none
+    int timeouts; // sessions of this component that gave up at the deadline
+
+    /**
+     * Solves the component on its own SAT session: one backbone computation decides which unknown
+     * cells must be tornadoes and which must be safe, skipping the cells whose answer is already known. The session is confined to the calling thread, so components can be solved in parallel.
+     * With a parallelism above one, a component with many open cells is split over several sessions.
+     * @return for each cell of unknownCells, in the same order, TRUE if it must be a tornado,
+     * FALSE if it must be safe and UNDEF otherwise
+     */
+    public Tristate[] call() {
+        Tristate[] results = new Tristate[unknownCells.size()];
+        int[] open = new int[unknownCells.size()]; // positions of the cells the solver decides
+        int numOpen = 0;
+        for (int i = 0; i < unknownCells.size(); i++) {
+            if (known != null && known[i] != null) {
+                results[i] = known[i];
+            } else {
+                open[numOpen++] = i;
+            }
+        }
+        if (numOpen > 0) {
+            int[] ids = new int[numOpen];
+            for (int i = 0; i < numOpen; i++) {
+                ids[i] = unknownCells.get(open[i]).getId();
+            }
+            // the sessions are only built when the earlier stages left cells open
+            QueryPortfolio portfolio = new QueryPortfolio(constraints, metrics);
+            portfolio.setDeadline(deadline);
+            Tristate[] backbone = portfolio.solve(ids, parallelism);
+            for (int i = 0; i < numOpen; i++) {
+                results[open[i]] = backbone[i];
+            }
+            solverCalls = portfolio.getSolverCalls();
+            timeouts = portfolio.getTimeouts();
+        }
+        return results;
+    }
+}
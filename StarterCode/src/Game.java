@@ -1,19 +1,31 @@
+import java.io.PrintStream;
 import java.util.Vector;
 
 /**
  * The Game class represents a game of Tornado Sweeper.
  * It contains the game state, the game board, and methods to interact with the game.
+ * The board is stored compactly: probed, flagged and tornado cells are bitsets over the
+ * linear cell index x * size + y, and `Cell` objects are thin views created on demand.
  *
+ * Hypothetical moves are explored with mark() and rollback(). While a mark is open, every change
+ * to a cell is recorded in an undo journal with the state the cell had before, so rolling back
+ * costs the number of changes since the mark, not the size of the board.
  */
 public class Game {
     private int size; // size of the board
     private int numTornadoes; // keeps track of tornado count
-    private Cell[][] cells; // Board representation in the form of Cells
+    private long[] tornadoes; // bitset over linear cell ids (x * size + y) of the cells holding a tornado
+    private long[] probed; // bitset of the cells that have been probed
+    private long[] flagged; // bitset of the cells that have been flagged
+    private byte[] clues; // the map given by the user, one character per cell
+    private byte[] info; // the information revealed by probing each cell, ' ' while unprobed
     private int numCellsProbed; // Count of cells probed
-    private char[][] gameState; // The present state of the board used at the time of printing the board
-    private char[][] map; // the map given my the user
     private boolean loss; // outcome of the game
     private int numFlags; // count of flags placed on the board
+    private Neighbourhood neighbourhood; // the hexagonal adjacency of the board
+    private IntDeque journal = new IntDeque(16); // pairs of (id, state before the change) recorded while a mark is open
+    private IntDeque marks = new IntDeque(4); // triples of (journal size, numCellsProbed, numFlags) of each open mark
+    private MoveTrace trace; // where the moves are recorded, null when they are not
 
     /** Constructor
      * Creates a new Game object with the specified game board.
@@ -22,37 +34,389 @@ public class Game {
      * @param map the game board, represented as a 2D array of characters inputed by the user
      */
     public Game(char[][] map) {
-        this.map = map;
         this.size = map.length;
         this.numTornadoes = 0;
-        this.cells = new Cell[size][size];
         this.numCellsProbed = 0;
         this.numFlags = 0;
-        this.gameState = new char[size][size];
+        int words = (size * size + 63) >>> 6;
+        this.tornadoes = new long[words];
+        this.probed = new long[words];
+        this.flagged = new long[words];
+        this.clues = new byte[size * size];
+        this.info = new byte[size * size];
+        this.neighbourhood = Neighbourhood.of(size);
 
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
-                char info = map[i][j];
-                if (info == 't') {
+                int id = i * size + j;
+                char c = map[i][j];
+                if (c == 't') {
                     numTornadoes++;
+                    tornadoes[id >>> 6] |= 1L << id;
                 }
-                cells[i][j] = new Cell(i, j);
-                gameState[i][j] = '?';
+                clues[id] = (byte) c;
+                info[id] = ' ';
             }
         }
         loss = false;
     }
 
+    /** Constructor
+     * Creates a new Game object from the positions of the tornadoes only.
+     * The clue of every other cell is computed from its hexagonal neighbourhood,
+     * so large boards can be created without a character map.
+     *
+     * @param size the size of the board
+     * @param tornadoes bitset over linear cell ids (x * size + y) of the cells holding a tornado
+     */
+    public Game(int size, long[] tornadoes) {
+        this.size = size;
+        this.numCellsProbed = 0;
+        this.numFlags = 0;
+        int words = (size * size + 63) >>> 6;
+        this.tornadoes = java.util.Arrays.copyOf(tornadoes, words);
+        this.probed = new long[words];
+        this.flagged = new long[words];
+        this.clues = new byte[size * size];
+        this.info = new byte[size * size];
+        this.neighbourhood = Neighbourhood.of(size);
+
+        this.numTornadoes = 0;
+        for (int id = 0; id < size * size; id++) {
+            if (isTornado(id)) {
+                numTornadoes++;
+                clues[id] = 't';
+            } else {
+                int count = 0;
+                for (int k = neighbourhood.start(id); k < neighbourhood.end(id); k++) {
+                    if (isTornado(neighbourhood.neighbour(k))) {
+                        count++;
+                    }
+                }
+                clues[id] = (byte) ('0' + count);
+            }
+            info[id] = ' ';
+        }
+        loss = false;
+    }
+
+    /**
+     * Returns the map of the game board, as given by the user or computed from the tornadoes.
+     *
+     * @return the map, represented as a 2D array of characters
+     */
+    public char[][] getMap() {
+        char[][] map = new char[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                map[i][j] = (char) clues[i * size + j];
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Returns true if the cell with the given linear index holds a tornado.
+     *
+     * @param id the linear index of the cell (x * size + y)
+     * @return true if the cell holds a tornado
+     */
+    public boolean isTornado(int id) {
+        return (tornadoes[id >>> 6] & (1L << id)) != 0;
+    }
+
     /**
      * Returns the game state, represented as a 2D array of characters.
      * Each cell is either unknown ('?'), probed (a digit or '-'), or flagged ('*').
+     * The array is built from the board on every call.
      *
      * @return the game state
      */
     public char[][] getGameState() {
+        char[][] gameState = new char[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                gameState[i][j] = getStateChar(i * size + j);
+            }
+        }
         return gameState;
     }
 
+    /**
+     * Returns the character shown for a cell in the game state.
+     *
+     * @param id the linear index of the cell
+     * @return '*' if flagged, the probed information ('-' for a tornado) if probed, '?' otherwise
+     */
+    public char getStateChar(int id) {
+        if (isFlagged(id)) {
+            return '*';
+        } else if (isProbed(id)) {
+            return info[id] != 't' ? (char) info[id] : '-';
+        }
+        return '?';
+    }
+
+    /**
+     * Returns true if the cell with the given linear index has been probed.
+     *
+     * @param id the linear index of the cell (x * size + y)
+     * @return true if the cell has been probed
+     */
+    public boolean isProbed(int id) {
+        return (probed[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Returns true if the cell with the given linear index has been flagged.
+     *
+     * @param id the linear index of the cell (x * size + y)
+     * @return true if the cell has been flagged
+     */
+    public boolean isFlagged(int id) {
+        return (flagged[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Returns true if the cell with the given linear index is neither probed nor flagged.
+     *
+     * @param id the linear index of the cell (x * size + y)
+     * @return true if the cell is unmarked
+     */
+    public boolean isUnmarked(int id) {
+        return ((probed[id >>> 6] | flagged[id >>> 6]) & (1L << id)) == 0;
+    }
+
+    /**
+     * Returns the information revealed by probing the cell with the given linear index.
+     *
+     * @param id the linear index of the cell (x * size + y)
+     * @return the probed information, or ' ' if the cell has not been probed
+     */
+    public char getInfo(int id) {
+        return (char) info[id];
+    }
+
+    /**
+     * Sets the probed flag of a cell. Used by the `Cell` view.
+     *
+     * @param id the linear index of the cell (x * size + y)
+     * @param isProbed whether the cell is probed
+     */
+    void setProbed(int id, boolean isProbed) {
+        record(id);
+        if (isProbed) {
+            probed[id >>> 6] |= 1L << id;
+        } else {
+            probed[id >>> 6] &= ~(1L << id);
+        }
+    }
+
+    /**
+     * Sets the flagged flag of a cell. Used by the `Cell` view.
+     *
+     * @param id the linear index of the cell (x * size + y)
+     * @param isFlagged whether the cell is flagged
+     */
+    void setFlagged(int id, boolean isFlagged) {
+        record(id);
+        if (isFlagged) {
+            flagged[id >>> 6] |= 1L << id;
+        } else {
+            flagged[id >>> 6] &= ~(1L << id);
+        }
+    }
+
+    /**
+     * Sets the revealed information of a cell. Used by the `Cell` view.
+     *
+     * @param id the linear index of the cell (x * size + y)
+     * @param c the revealed information
+     */
+    void setInfo(int id, char c) {
+        record(id);
+        info[id] = (byte) c;
+    }
+
+    /**
+     * Records the state of a cell in the undo journal before it changes, if a mark is open.
+     *
+     * @param id the linear index of the cell about to change
+     */
+    private void record(int id) {
+        if (marks.isEmpty()) {
+            return;
+        }
+        int state = (info[id] & 0xFF) << 2;
+        if ((probed[id >>> 6] & (1L << id)) != 0) {
+            state |= 1;
+        }
+        if ((flagged[id >>> 6] & (1L << id)) != 0) {
+            state |= 2;
+        }
+        journal.addLast(id);
+        journal.addLast(state);
+    }
+
+    /**
+     * Records the moves of this game from now on (see MoveTrace), starting with the board.
+     * It is set before the first move, so a replay of the trace starts from the same state.
+     *
+     * @param trace the trace to record into, or null to stop recording
+     */
+    public void setTrace(MoveTrace trace) {
+        this.trace = trace;
+        if (trace != null) {
+            trace.startGame(this);
+        }
+    }
+
+    /**
+     * Opens a mark: the changes made from now on can be undone with rollback().
+     * Marks nest, each rollback() or commit() closes the most recent one.
+     *
+     * @return the number of open marks, including this one
+     */
+    public int mark() {
+        if (trace != null) {
+            trace.control(MoveTrace.MARK);
+        }
+        marks.addLast(journal.size());
+        marks.addLast(numCellsProbed);
+        marks.addLast(numFlags);
+        return marks.size() / 3;
+    }
+
+    /**
+     * Undoes every change made since the most recent mark and closes it.
+     * The cost is the number of changes recorded since the mark.
+     *
+     * @throws IllegalStateException if no mark is open
+     */
+    public void rollback() {
+        if (marks.isEmpty()) {
+            throw new IllegalStateException("no mark to roll back to");
+        }
+        if (trace != null) {
+            trace.control(MoveTrace.ROLLBACK);
+        }
+        numFlags = marks.pollLast();
+        numCellsProbed = marks.pollLast();
+        int start = marks.pollLast();
+        // undo in reverse order, so a cell changed twice ends in its state before the first change
+        while (journal.size() > start) {
+            int state = journal.pollLast();
+            int id = journal.pollLast();
+            info[id] = (byte) (state >>> 2);
+            if ((state & 1) != 0) {
+                probed[id >>> 6] |= 1L << id;
+            } else {
+                probed[id >>> 6] &= ~(1L << id);
+            }
+            if ((state & 2) != 0) {
+                flagged[id >>> 6] |= 1L << id;
+            } else {
+                flagged[id >>> 6] &= ~(1L << id);
+            }
+        }
+    }
+
+    /**
+     * Closes the most recent mark and keeps its changes. They can still be undone by an enclosing mark.
+     *
+     * @throws IllegalStateException if no mark is open
+     */
+    public void commit() {
+        if (marks.isEmpty()) {
+            throw new IllegalStateException("no mark to commit");
+        }
+        if (trace != null) {
+            trace.control(MoveTrace.COMMIT);
+        }
+        marks.pollLast();
+        marks.pollLast();
+        marks.pollLast();
+        if (marks.isEmpty()) {
+            journal.clear();
+        }
+    }
+
+    /**
+     * Returns the word of the unmarked bitset with the given index, with the bits past
+     * the last cell cleared.
+     *
+     * @param word the index of the word
+     * @return the unmarked cells of the word as bits
+     */
+    private long unmarkedWord(int word) {
+        long bits = ~(probed[word] | flagged[word]);
+        int cells = size * size;
+        if (word == (cells - 1) >>> 6 && (cells & 63) != 0) {
+            bits &= (1L << cells) - 1;
+        }
+        return bits;
+    }
+
+    /**
+     * Returns the linear index of the first unmarked cell at or after the given index.
+     *
+     * @param from the linear index to start searching from
+     * @return the linear index of the next unmarked cell, or -1 if there is none
+     */
+    public int nextUnmarked(int from) {
+        int cells = size * size;
+        if (from >= cells) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = unmarkedWord(word) & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word >= probed.length) {
+                return -1;
+            }
+            bits = unmarkedWord(word);
+        }
+    }
+
+    /**
+     * Returns the linear index of the first probed cell at or after the given index.
+     *
+     * @param from the linear index to start searching from
+     * @return the linear index of the next probed cell, or -1 if there is none
+     */
+    public int nextProbed(int from) {
+        if (from >= size * size) {
+            return -1;
+        }
+        int word = from >>> 6;
+        long bits = probed[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word >= probed.length) {
+                return -1;
+            }
+            bits = probed[word];
+        }
+    }
+
+    /**
+     * Returns the number of cells that are neither probed nor flagged.
+     *
+     * @return the number of unmarked cells
+     */
+    public int countUnmarked() {
+        int count = 0;
+        for (int word = 0; word < probed.length; word++) {
+            count += Long.bitCount(unmarkedWord(word));
+        }
+        return count;
+    }
+
     /**
      * Returns the size of the game board.
      *
@@ -62,6 +426,15 @@ public class Game {
         return size;
     }
 
+    /**
+     * Returns the hexagonal adjacency of the game board.
+     *
+     * @return the neighbourhood shared by all boards of this size
+     */
+    public Neighbourhood getNeighbourhood() {
+        return neighbourhood;
+    }
+
     /**
      * Returns the number of tornadoes on the game board.
      *
@@ -79,7 +452,7 @@ public class Game {
      * @return the `Cell` object at the specified position
      */
     public Cell getCell(int x, int y) {
-        return cells[x][y];
+        return new Cell(this, x, y);
     }
 
     /**
@@ -89,15 +462,22 @@ public class Game {
      * @return the `Cell` object at the specified position
      */
     public Cell getCell(int[] xy) {
-        return cells[xy[0]][xy[1]];
+        return new Cell(this, xy[0], xy[1]);
     }
 
     /**
-     * Returns a 2D array of all `Cell` objects on the game board.
+     * Returns a 2D array of `Cell` views of the whole game board.
+     * The views are created on every call.
      *
      * @return a 2D array of all `Cell` objects
      */
     public Cell[][] getCells() {
+        Cell[][] cells = new Cell[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                cells[i][j] = new Cell(this, i, j);
+            }
+        }
         return cells;
     }
 
@@ -109,12 +489,8 @@ public class Game {
      */
     public Vector<int[]> getUnprobedUnFlaggedCells() {
         Vector<int[]> unprobedUnflaggedcells = new Vector<>();
-        for(int x = 0; x < size; x++) {
-            for (int y = 0; y < size; y++) {
-                if (!cells[x][y].isProbed() && !cells[x][y].isFlagged()) {
-                    unprobedUnflaggedcells.add(new int[]{x,y});
-                }
-            }
+        for (int id = nextUnmarked(0); id >= 0; id = nextUnmarked(id + 1)) {
+            unprobedUnflaggedcells.add(new int[]{id / size, id % size});
         }
         return unprobedUnflaggedcells;
     }
@@ -128,6 +504,15 @@ public class Game {
         return numCellsProbed;
     }
 
+    /**
+     * Returns the number of flags placed on the board.
+     *
+     * @return the number of flags
+     */
+    public int getNumFlags() {
+        return numFlags;
+    }
+
     /**
      * Returns the state of the cell at the specified position on the game board.
      * The state is either a digit ('0' to '6'), or a tornado ('t').
@@ -137,7 +522,7 @@ public class Game {
      * @return the state of the cell at the specified position
      */
     public char getCellState(int x, int y) {
-        return map[x][y];
+        return (char) clues[x * size + y];
     }
 
     /**
@@ -172,10 +557,20 @@ public class Game {
      * @param loss a boolean value indicating whether the game was lost or not.
      */
     public void printGameOutcome(boolean loss) {
+        printGameOutcome(loss, System.out);
+    }
+
+    /**
+     * Prints the outcome of the game to the given stream.
+     *
+     * @param loss a boolean value indicating whether the game was lost or not.
+     * @param out the stream to print to
+     */
+    public void printGameOutcome(boolean loss, PrintStream out) {
         if (loss) {
-            System.out.println("Result: Agent dead: found mine");
+            out.println("Result: Agent dead: found mine");
         } else {
-            System.out.println("Result: Agent alive: all solved");
+            out.println("Result: Agent alive: all solved");
         }
     }
 
@@ -185,13 +580,9 @@ public class Game {
      * @return an array containing the x and y coordinates of the first unprobed cell, or null if no unprobed cells are found.
      */
     public int[] getTopLeft() {
-        for (int x = 0; x < size; x++) { // rows of the board
-            for (int y = 0; y < size; y++) { // columns of the board
-                // Check if the cell is not probed
-                if (!cells[x][y].isProbed() && !cells[x][y].isFlagged()) {
-                    return new int[] { x, y };// Return the position of the first unprobed cell
-                }
-            }
+        int id = nextUnmarked(0); // cells are numbered row by row
+        if (id >= 0) {
+            return new int[] { id / size, id % size };// Return the position of the first unprobed cell
         }
         return null;
     }
@@ -204,14 +595,33 @@ public class Game {
      * @param info the information obtained by probing the cell.
      */
     public void updateCells(int x, int y, char info) {
+        int id = x * size + y;
+        record(id);
+        if (trace != null) {
+            trace.probe(id);
+        }
         numCellsProbed += 1;
-        cells[x][y].setProbed(true);
-        cells[x][y].setInfo(info);
-        if (info != 't') {
-            gameState[x][y] = info;
-        } else {
-            gameState[x][y] = '-';
+        probed[id >>> 6] |= 1L << id;
+        this.info[id] = (byte) info;
+    }
+
+    /**
+     * Probes a batch of cells in one update, revealing the information of the map for each.
+     * This has the same effect as calling updateCells with the hidden information of every cell.
+     *
+     * @param ids the linear indexes of the cells to probe
+     */
+    public void revealCells(IntDeque ids) {
+        for (int i = 0; i < ids.size(); i++) {
+            int id = ids.get(i);
+            record(id);
+            if (trace != null) {
+                trace.probe(id);
+            }
+            probed[id >>> 6] |= 1L << id;
+            info[id] = clues[id];
         }
+        numCellsProbed += ids.size();
     }
 
     /**
@@ -237,8 +647,10 @@ public class Game {
         int y = coord[1];
 
         numFlags += 1;
-        cells[x][y].setFlagged(true);
-        gameState[x][y] = '*';
+        setFlagged(x * size + y, true); // recorded by setFlagged
+        if (trace != null) {
+            trace.flag(x * size + y);
+        }
     }
 
     /**
@@ -257,12 +669,8 @@ public class Game {
      */
     public Vector<Cell> getProbedCells() {
         Vector<Cell> probedCells = new Vector<>();
-        for (int i = 0; i < size; i++) {
-            for (int j =0; j < size; j++) {
-                if (cells[i][j].isProbed()) {
-                    probedCells.add(cells[i][j]);
-                }
-            }
+        for (int id = nextProbed(0); id >= 0; id = nextProbed(id + 1)) {
+            probedCells.add(new Cell(this, id / size, id % size));
         }
         return probedCells;
     }
@@ -274,12 +682,8 @@ public class Game {
      */
     public Vector<Cell> getUnmarkedCells() {
         Vector<Cell> unmarkedCells = new Vector<>();
-        for (int i = 0; i < size; i++) {
-            for (int j =0; j < size; j++) {
-                if (!cells[i][j].isProbed() && !cells[i][j].isFlagged()) {
-                    unmarkedCells.add(cells[i][j]);
-                }
-            }
+        for (int id = nextUnmarked(0); id >= 0; id = nextUnmarked(id + 1)) {
+            unmarkedCells.add(new Cell(this, id / size, id % size));
         }
         return unmarkedCells;
     }
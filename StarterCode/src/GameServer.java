@@ -0,0 +1,423 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The GameServer hosts many games in one JVM behind a line-based text protocol on a loopback socket.
+ * Each connection runs on a thread of its own: a virtual thread when the JVM has them (Java 21 and later),
+ * otherwise a thread of a cached pool. A game played by an agent runs on the thread of the connection that
+ * asked for it. Sessions are kept in memory and a session that has not been used for the idle timeout,
+ * and is not busy with a request, is evicted.
+ *
+ * Usage: java A3main server [port=7777] [idleSeconds=300] [maxSessions=10000]
+ *
+ * Requests, one per line, each answered by one line starting with OK or ERR:
+ *  - NEW board            creates a session on a board (see BoardLoader.fromArgument): OK id size
+ *  - PROBE id x y         probes a cell, revealing a zero region at once: OK info revealed status
+ *  - FLAG id x y          flags a cell: OK flags status
+ *  - STATE id             the board as the agents see it, rows separated by '/': OK rows status
+ *  - PLAY id agent        plays a new game with P1 to P4: OK outcome probes flags wall_ms
+ *  - CLOSE id             ends a session: OK
+ *  - SESSIONS             the number of live sessions: OK count
+ *  - QUIT                 closes the connection
+ * The status is one of playing, won or dead. PLAY is refused on a session that already has moves, as the
+ * agents start from an untouched board.
+ */
+public class GameServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final ExecutorService threads = newThreadPerTaskExecutor();
+    private final ScheduledExecutorService evictor;
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicInteger liveSessions = new AtomicInteger(); // sessions created and not yet removed, at most maxSessions
+    private final long idleMillis;
+    private final int maxSessions;
+
+    /**
+     * One game hosted by the server. Requests on a session are serialised on its lock, which does not pin
+     * a virtual thread while an agent plays.
+     */
+    static class Session {
+        final long id;
+        final Game game;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile long lastUsed = System.currentTimeMillis(); // when the session was last used, for eviction
+        boolean dead; // a tornado was probed
+
+        Session(long id, Game game) {
+            this.id = id;
+            this.game = game;
+        }
+
+        String status() {
+            return dead ? "dead" : game.hasWon() ? "won" : "playing";
+        }
+    }
+
+    /**
+     * Creates a server listening on the loopback address.
+     * @param port the port, 0 for any free port
+     * @param idleMillis the time after which an unused session is evicted
+     * @param maxSessions the largest number of live sessions
+     * @throws IOException if the socket cannot be opened
+     */
+    public GameServer(int port, long idleMillis, int maxSessions) throws IOException {
+        this.serverSocket = new ServerSocket(port, 512, InetAddress.getLoopbackAddress());
+        this.idleMillis = idleMillis;
+        this.maxSessions = maxSessions;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleMillis / 4);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread if the JVM supports them, and on a
+     * cached pool of daemon platform threads otherwise. The virtual thread executor is looked up by
+     * reflection, so this class also compiles and runs on Java 17.
+     * @return the executor
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Returns the port the server listens on.
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of live sessions.
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Accepts connections until the server is closed, each served on a thread of its own.
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                threads.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("accept failed: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Serves the requests of one connection until it sends QUIT or closes.
+     * @param socket the connection
+     */
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] request = line.trim().split("\\s+");
+                if (request[0].equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+                out.println(respond(request));
+            }
+        } catch (IOException e) {
+            // the client went away, its sessions stay until they are closed or evicted
+        }
+    }
+
+    /**
+     * Answers one request.
+     * @param request the words of the request line
+     * @return the response line
+     */
+    String respond(String[] request) {
+        try {
+            switch (request[0].toUpperCase()) {
+            case "NEW":
+                return newSession(request[1]);
+            case "PROBE":
+                return probe(session(request[1]), Integer.parseInt(request[2]), Integer.parseInt(request[3]));
+            case "FLAG":
+                return flag(session(request[1]), Integer.parseInt(request[2]), Integer.parseInt(request[3]));
+            case "STATE":
+                return state(session(request[1]));
+            case "PLAY":
+                return play(session(request[1]), request[2]);
+            case "CLOSE":
+                return remove(Long.parseLong(request[1])) ? "OK" : "ERR no session " + request[1];
+            case "SESSIONS":
+                return "OK " + sessions.size();
+            default:
+                return "ERR unknown request " + request[0];
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return "ERR missing argument";
+        } catch (IllegalArgumentException | IllegalStateException | UncheckedIOException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    private String newSession(String board) {
+        // the slot is taken before the board is built, so concurrent requests cannot go over the limit
+        if (liveSessions.incrementAndGet() > maxSessions) {
+            liveSessions.decrementAndGet();
+            return "ERR too many sessions";
+        }
+        Game game;
+        try {
+            game = BoardLoader.fromArgument(board);
+        } catch (RuntimeException e) {
+            liveSessions.decrementAndGet();
+            throw e;
+        }
+        long id = nextId.getAndIncrement();
+        sessions.put(id, new Session(id, game));
+        return "OK " + id + " " + game.getSize();
+    }
+
+    /**
+     * Removes a session and frees its slot.
+     * @param id the session id
+     * @return true if the session was live
+     */
+    private boolean remove(long id) {
+        if (sessions.remove(id) == null) {
+            return false;
+        }
+        liveSessions.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns a live session and marks it as used.
+     * @param id the session id
+     * @return the session
+     * @throws IllegalArgumentException if there is no such session
+     */
+    private Session session(String id) {
+        Session session = sessions.get(Long.parseLong(id));
+        if (session == null) {
+            throw new IllegalArgumentException("no session " + id);
+        }
+        session.lastUsed = System.currentTimeMillis();
+        return session;
+    }
+
+    private String probe(Session session, int x, int y) {
+        session.lock.lock();
+        try {
+            Game game = session.game;
+            int id = cellId(game, x, y);
+            if (session.dead || game.hasWon()) {
+                return "ERR game over";
+            }
+            if (!game.isUnmarked(id)) {
+                return "ERR cell not unmarked";
+            }
+            char info = game.getCellState(x, y);
+            game.updateCells(x, y, info);
+            int revealed = 1;
+            if (info == 't') {
+                session.dead = true;
+            } else if (info == '0') {
+                revealed += revealZeros(game, id);
+            }
+            return "OK " + info + " " + revealed + " " + session.status();
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Probes every cell of the zero region around a probed zero, as the agents do.
+     * @return the number of cells probed
+     */
+    private static int revealZeros(Game game, int start) {
+        Neighbourhood nb = game.getNeighbourhood();
+        IntDeque zeros = new IntDeque(64);
+        zeros.addLast(start);
+        int revealed = 0;
+        while (!zeros.isEmpty()) {
+            int id = zeros.pollFirst();
+            for (int k = nb.start(id); k < nb.end(id); k++) {
+                int n = nb.neighbour(k);
+                if (game.isUnmarked(n)) {
+                    char info = game.getCellState(n / game.getSize(), n % game.getSize());
+                    game.updateCells(n / game.getSize(), n % game.getSize(), info);
+                    revealed++;
+                    if (info == '0') {
+                        zeros.addLast(n);
+                    }
+                }
+            }
+        }
+        return revealed;
+    }
+
+    private String flag(Session session, int x, int y) {
+        session.lock.lock();
+        try {
+            Game game = session.game;
+            if (session.dead || game.hasWon()) {
+                return "ERR game over";
+            }
+            if (!game.isUnmarked(cellId(game, x, y))) {
+                return "ERR cell not unmarked";
+            }
+            game.putFlag(new int[]{x, y});
+            return "OK " + game.getNumFlags() + " " + session.status();
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    private String state(Session session) {
+        session.lock.lock();
+        try {
+            char[][] board = session.game.getGameState();
+            StringBuilder rows = new StringBuilder("OK ");
+            for (int i = 0; i < board.length; i++) {
+                rows.append(i == 0 ? "" : "/").append(board[i]);
+            }
+            return rows.append(' ').append(session.status()).toString();
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    /**
+     * Plays the game of a session with an agent, on the thread of the connection. The agents start from
+     * an untouched board, so a session that already has moves is refused.
+     */
+    private String play(Session session, String agentName) {
+        session.lock.lock();
+        try {
+            if (session.dead || session.game.hasWon()) {
+                return "ERR game over";
+            }
+            if (session.game.getNumCellsProbed() > 0 || session.game.getNumFlags() > 0) {
+                return "ERR session already has moves";
+            }
+            Agent agent = Agent.create(agentName, session.game, false);
+            agent.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+            agent.setRenderMode(BoardRenderer.Mode.SILENT);
+            long start = System.nanoTime();
+            try {
+                agent.playGame();
+            } catch (RuntimeException e) {
+                return "ERR " + e;
+            }
+            long wallNanos = System.nanoTime() - start;
+            session.dead = Agent.DEAD.equals(agent.getResult());
+            return "OK " + Tournament.outcomeName(agent.getResult()) + " " + session.game.getNumCellsProbed()
+                    + " " + session.game.getNumFlags() + " " + String.format("%.3f", wallNanos / 1e6);
+        } finally {
+            session.lastUsed = System.currentTimeMillis();
+            session.lock.unlock();
+        }
+    }
+
+    private static int cellId(Game game, int x, int y) {
+        if (x < 0 || y < 0 || x >= game.getSize() || y >= game.getSize()) {
+            throw new IllegalArgumentException("cell outside the board");
+        }
+        return x * game.getSize() + y;
+    }
+
+    /**
+     * Removes the sessions that have not been used for the idle timeout. A session busy with a request,
+     * such as a long PLAY, is kept whatever its last use.
+     */
+    private void evictIdle() {
+        long oldest = System.currentTimeMillis() - idleMillis;
+        for (Session session : sessions.values()) {
+            // removed only if still mapped, so a concurrent CLOSE does not free the slot twice
+            if (session.lastUsed < oldest && !session.lock.isLocked() && sessions.remove(session.id, session)) {
+                liveSessions.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and drops all sessions.
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        evictor.shutdownNow();
+        threads.shutdownNow();
+        sessions.clear();
+        liveSessions.set(0);
+    }
+
+    /**
+     * Runs the server until the process is stopped.
+     * @param args options as key=value: port, idleSeconds and maxSessions
+     * @throws IOException if the socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 7777;
+        long idleSeconds = 300;
+        int maxSessions = 10000;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("expected key=value, got " + arg);
+            }
+            switch (option[0]) {
+            case "port":
+                port = Integer.parseInt(option[1]);
+                break;
+            case "idleSeconds":
+                idleSeconds = Long.parseLong(option[1]);
+                break;
+            case "maxSessions":
+                maxSessions = Integer.parseInt(option[1]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option " + option[0]);
+            }
+        }
+        GameServer server = new GameServer(port, idleSeconds * 1000, maxSessions);
+        System.out.println("serving games on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort());
+        server.serve();
+    }
+}
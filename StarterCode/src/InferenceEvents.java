@@ -0,0 +1,88 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JDK Flight Recorder events of the agents. Events are only recorded while a recording is
+ * running, e.g. java -XX:StartFlightRecording=filename=agents.jfr A3main P3 LARGE3, and can then
+ * be inspected with jfr print --categories TornadoSweeper agents.jfr or JDK Mission Control.
+ * The hot paths check the cached event types below before allocating an event, so that nothing
+ * is allocated per probe while no recording is running.
+ */
+public class InferenceEvents {
+
+    static final EventType PROBE = EventType.getEventType(Probe.class);
+    static final EventType ZERO_FLOOD = EventType.getEventType(ZeroFlood.class);
+    static final EventType KNOWLEDGE_BASE_UPDATE = EventType.getEventType(KnowledgeBaseUpdate.class);
+    static final EventType ENCODE = EventType.getEventType(Encode.class);
+    static final EventType BACKBONE = EventType.getEventType(BackboneComputation.class);
+
+    @Name("tornadosweeper.Probe")
+    @Label("Probe")
+    @Category("TornadoSweeper")
+    @Description("A cell probed by an agent")
+    static class Probe extends Event {
+        @Label("Cell")
+        int cell;
+        @Label("Information")
+        char info;
+    }
+
+    @Name("tornadosweeper.ZeroFlood")
+    @Label("Zero Flood")
+    @Category("TornadoSweeper")
+    @Description("The cells revealed around a zero clue")
+    static class ZeroFlood extends Event {
+        @Label("Cells")
+        int cells;
+    }
+
+    @Name("tornadosweeper.KnowledgeBaseUpdate")
+    @Label("Knowledge Base Update")
+    @Category("TornadoSweeper")
+    @Description("New clues and facts added to the SAT session")
+    static class KnowledgeBaseUpdate extends Event {
+        @Label("Constraints")
+        int constraints;
+    }
+
+    @Name("tornadosweeper.Encode")
+    @Label("Encode")
+    @Category("TornadoSweeper")
+    @Description("A clue constraint encoded as clauses of the SAT session")
+    static class Encode extends Event {
+        @Label("Literals")
+        int literals;
+    }
+
+    @Name("tornadosweeper.Backbone")
+    @Label("Backbone")
+    @Category("TornadoSweeper")
+    @Description("The cells forced by the knowledge base, computed in one solver invocation")
+    static class BackboneComputation extends Event {
+        @Label("Cells")
+        int cells;
+        @Label("Forced Tornadoes")
+        int tornadoes;
+        @Label("Forced Safe")
+        int safe;
+    }
+
+    @Name("tornadosweeper.GamePlayed")
+    @Label("Game Played")
+    @Category("TornadoSweeper")
+    @Description("A whole game played by an agent, from its creation to its outcome")
+    static class GamePlayed extends Event {
+        @Label("Agent")
+        String agent;
+        @Label("Outcome")
+        String outcome;
+        @Label("Probes")
+        int probes;
+        @Label("Flags")
+        int flags;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * IntDeque is a double-ended queue of primitive ints backed by a ring buffer.
+ * It is used for the cell worklists of the agents, where cells are encoded by their linear index,
+ * so adding and removing at either end is O(1) and does not allocate once the buffer has grown.
+ */
+public final class IntDeque {
+    private int[] elements; // the ring buffer, its length is always a power of two
+    private int head; // position of the first element
+    private int size; // number of elements in the deque
+
+    /**
+     * Creates an empty deque.
+     * @param capacity the number of elements the deque can hold before it grows
+     */
+    public IntDeque(int capacity) {
+        this.elements = new int[Integer.highestOneBit(Math.max(capacity, 8) - 1) << 1];
+    }
+
+    /**
+     * Adds an element at the end of the deque.
+     * @param value the element to add
+     */
+    public void addLast(int value) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = value;
+        size += 1;
+    }
+
+    /**
+     * Adds an element at the front of the deque.
+     * @param value the element to add
+     */
+    public void addFirst(int value) {
+        if (size == elements.length) {
+            grow();
+        }
+        head = (head - 1) & (elements.length - 1);
+        elements[head] = value;
+        size += 1;
+    }
+
+    /**
+     * Removes and returns the first element of the deque.
+     * @return the first element
+     * @throws java.util.NoSuchElementException if the deque is empty
+     */
+    public int pollFirst() {
+        if (size == 0) {
+            throw new java.util.NoSuchElementException();
+        }
+        int value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size -= 1;
+        return value;
+    }
+
+    /**
+     * Removes and returns the last element of the deque.
+     * @return the last element
+     * @throws java.util.NoSuchElementException if the deque is empty
+     */
+    public int pollLast() {
+        if (size == 0) {
+            throw new java.util.NoSuchElementException();
+        }
+        size -= 1;
+        return elements[(head + size) & (elements.length - 1)];
+    }
+
+    /**
+     * Returns the element at the given position from the front, without removing it.
+     * @param index the position, 0 being the first element
+     * @return the element
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return elements[(head + index) & (elements.length - 1)];
+    }
+
+    /**
+     * Returns true if the deque holds no elements.
+     * @return true if the deque is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of elements in the deque.
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the elements, keeping the buffer.
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Doubles the capacity of the ring buffer, moving the elements to the front.
+     */
+    private void grow() {
+        int[] grown = new int[elements.length << 1];
+        int firstPart = elements.length - head;
+        System.arraycopy(elements, head, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, head);
+        elements = grown;
+        head = 0;
+    }
+}
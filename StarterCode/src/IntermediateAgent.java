@@ -9,22 +9,40 @@
  */
 
 import org.logicng.datastructures.Tristate;
-import org.logicng.formulas.Formula;
-import org.logicng.formulas.FormulaFactory;
-import org.logicng.io.parsers.ParserException;
-import org.logicng.io.parsers.PropositionalParser;
-import org.logicng.solvers.MiniSat;
-import org.logicng.solvers.SATSolver;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class IntermediateAgent extends Agent {
-    String knowledgeString; // the representation of the world with clues to be processed by a SAT solver
-    Vector<Cell> unmarkedCells = new Vector<>(); // Vector of all cells that are covered or unflagged
+    SatSession session = new SatSession(); // the knowledge base of the game, kept in one incremental SAT solver and encoded when it is used
+    IntDeque changedCells = new IntDeque(64); // probed or flagged cells not yet added to the session
+    int[][] constraints; // cached clue constraint of each probed cell, null until built or after a neighbour changed
+    long[] frontierClues; // bitset of the probed cells that still have unknown neighbours
+    int[] parent; // union-find forest over unknown cells, -1 outside the frontier, reused across sweeps
+    int componentSolverCalls; // queries answered by the per-component sessions
+    PatternCache patternCache = PatternCache.shared(PatternCache.Rule.LOCAL); // local deductions asked before the solver, null to always solve
+    SubsetRule subsetRule; // pairwise comparison of overlapping clues, tried before the linear stage, null to skip
+    Tristate[] subsetForced; // decisions of the subset rule by linear index, reused across sweeps and cleared after each
+    int portfolioParallelism = Boolean.getBoolean("agent.portfolio") ? ForkJoinPool.commonPool().getParallelism() : 1; // sessions a component's queries may be split over
+    long moveBudgetMillis = Long.getLong("agent.moveBudgetMs", 0); // time the solving stages may take in one sweep, 0 for no limit
+    long gameBudgetMillis = Long.getLong("agent.gameBudgetMs", 0); // time the sweeps may take over the game, 0 for no limit
+    long gameDeadline; // time in milliseconds since the epoch at which the game budget runs out, 0 for none
+    boolean fellBack; // the solving stages of the current sweep were cut short by the deadline
+    int fallbacks; // sweeps that fell back to the cheap stages
+    boolean linearStage = true; // whether Gaussian elimination over the clues is tried before the solver
     int steps;
     int maxSteps = 100;
 
+    // CNF templates for "exactly k of n", keyed by n * 8 + k
+    private static final Map<Integer, int[][]> CC_TEMPLATES = new ConcurrentHashMap<>();
+
     /**
      * Constructor for creating an instance of IntermediateAgent.
      *
@@ -35,6 +53,61 @@ public class IntermediateAgent extends Agent {
      */
     public IntermediateAgent(Game game, int startX, int startY, boolean verbose) {
         super(game, startX, startY, verbose);
+        session.setMetrics(metrics);
+        int cells = game.getSize() * game.getSize();
+        constraints = new int[cells][];
+        frontierClues = new long[(cells + 63) >>> 6];
+        parent = new int[cells];
+        java.util.Arrays.fill(parent, -1);
+        subsetRule = new SubsetRule(game.getNeighbourhood());
+    }
+
+    /**
+     * Turns the query portfolio on or off. When it is on, the open cells of a large component are
+     * split over one session per worker of the common fork-join pool (see QueryPortfolio), and a
+     * frontier of one component is solved that way too rather than on the game-wide session.
+     * @param enabled true to split the queries over the pool
+     */
+    public void setQueryPortfolio(boolean enabled) {
+        portfolioParallelism = enabled ? ForkJoinPool.commonPool().getParallelism() : 1;
+    }
+
+    /**
+     * Sets the time budgets of the agent. When the budget of a sweep or of the game runs out, Gaussian
+     * elimination and the solver are cut short or skipped, and the sweep only applies what the pattern
+     * cache and the subset rule decided, which are cheap and bounded by the size of the frontier.
+     * @param moveMillis the time the solving stages may take in one sweep, 0 for no limit
+     * @param gameMillis the time the sweeps may take over the game, counted from the first sweep, 0 for no limit
+     */
+    public void setBudget(long moveMillis, long gameMillis) {
+        this.moveBudgetMillis = moveMillis;
+        this.gameBudgetMillis = gameMillis;
+    }
+
+    /**
+     * Returns the number of sweeps in which the solving stages were cut short by a time budget.
+     * @return the number of fallbacks
+     */
+    public int getFallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * Stops reporting the game (see Agent.disableReporting), including from the game-wide session.
+     */
+    @Override
+    public void disableReporting() {
+        super.disableReporting();
+        session.setMetrics(null);
+    }
+
+    /**
+     * Returns the number of backbone computations made by the game-wide and the per-component sessions.
+     * @return the number of solver calls
+     */
+    @Override
+    public int getSolverCalls() {
+        return session.getSolverCalls() + componentSolverCalls;
     }
 
     /**
@@ -63,89 +136,64 @@ public class IntermediateAgent extends Agent {
     }
 
     /**
-     * this applies the SPS to a given unprobed cell
-     * @param unprobedCell
-     */
-    private void applySPS(int[] unprobedCell) {
-
-        Vector<int[]> probedNeighbours = getProbedNeighbours(unprobedCell);
-        for (int[] probedNeighbour: probedNeighbours) {
-            int clues = Character.getNumericValue(game.getCell(probedNeighbour).getInfo());
-            int flagsCount = getCountNeighbourFlags(probedNeighbour);
-            int unprobeUnflagCount = getUnprobedUnflagCount(probedNeighbour);
-            if (clues == flagsCount) {
-                char info = probe(unprobedCell[0], unprobedCell[1]);
-                if (info == '0') {
-                    this.currentX = unprobedCell[0];
-                    this.currentY = unprobedCell[1];
-                    recursivelyProbeZeros(info);
-                }
-                updateKnowledgeBase();
-                break;
-            } else if (clues - flagsCount == unprobeUnflagCount) {
-                setFlag(unprobedCell);
-                break;
-            } else {
-                continue;
-            }
-        }
-
-    }
-
-    /**
-     * Use the SATS
+     * Use the SATS. Each sweep computes the backbone of the knowledge base over the frontier,
+     * the cells that are tornadoes in every model and the cells that are safe in every model,
+     * with one solver invocation per independent component, and applies all the forced moves.
+     * The cheaper stages go first, and the solver is only asked about the cells they leave open:
+     * the pattern cache, the subset rule over pairs of clues, then Gaussian elimination.
+     * With a time budget (see setBudget) the last two stages stop at the deadline of the sweep,
+     * and a sweep past its deadline only applies what the cheap stages decided.
      */
     private void useSat() {
 
-        FormulaFactory f = new FormulaFactory();
-        PropositionalParser p = new PropositionalParser(f);
-
-        updateKnowledgeBase();
-        // Get a list of all unmarked cells
-        unmarkedCells = game.getUnmarkedCells();
+        gameDeadline = gameBudgetMillis > 0 ? System.currentTimeMillis() + gameBudgetMillis : 0;
 
-        int i = 0;
+        boolean stuck = false; // a whole sweep made no move and onStuck found none either
         while (true) {
-            for (int j = 0; j < unmarkedCells.size(); j++) {
-
-                Cell unmarked = unmarkedCells.get(j);
-                if (!unmarked.isProbed() && !unmarked.isFlagged()) {
-
-                    try {
-                        // create the knowledge string with the addition of the unmarked or unflagged cell
-                        Formula formula = p.parse(knowledgeString + "&T" + Integer.toString(unmarked.getX()) + Integer.toString(unmarked.getY()));
-                        final SATSolver miniSat = MiniSat.miniSat(f);
-                        miniSat.add(formula);
-                        final Tristate result = miniSat.sat();
-
-                        // on the basis of the outcome of the solver perform either of the three actions
-                        switch (result) {
-                            case TRUE:
-                                applySPS(new int[]{unmarked.getX(), unmarked.getY()});
-                                updateKnowledgeBase();
-                                break;
-                            case FALSE:
-                                // no tornado, cell is safe to probe
-                                this.currentX = unmarked.getX();
-                                this.currentY = unmarked.getY();
-                                char info = probe(unmarked.getX(), unmarked.getY());
-                                if (info == '0') {
-                                    recursivelyProbeZeros(info);
-                                }
-                                updateKnowledgeBase();
-                                break;
-                            case UNDEF:
-                                applySPS(new int[]{unmarked.getX(), unmarked.getY()});
-                                updateKnowledgeBase();
-
-                                break;
-                        }
-                    } catch (ParserException pe) {
-                        System.out.println(pe);
+            int movesBefore = game.getNumCellsProbed() + game.getNumFlags();
+            long deadline = sweepDeadline();
+            fellBack = false;
+
+            // independent regions of the frontier are solved on their own small KB in parallel
+            Vector<FrontierComponent> components = getFrontierComponents();
+            lookupComponents(components);
+            applySubsetRule(components);
+            solveLinear(components, deadline);
+            if (isPast(deadline)) {
+                // only what the cheap stages decided is applied
+            } else if (components.size() > 1 || portfolioParallelism > 1) {
+                solveComponents(components, deadline);
+            } else {
+                solveFrontier(components, deadline);
+            }
+            if (fellBack || isPast(deadline)) {
+                fallbacks += 1;
+                if (metrics != null) {
+                    metrics.count(AgentMetrics.Counter.FALLBACKS, 1);
+                }
+            }
+
+            // apply the forced moves, cells outside the frontier are never forced
+            for (FrontierComponent component : components) {
+                for (int i = 0; component.known != null && i < component.known.length; i++) {
+                    int id = component.unknownCells.get(i).getId();
+                    if (component.known[i] == null || !game.isUnmarked(id)) {
+                        continue; // a zero flood of this sweep may have probed the cell already
+                    }
+                    if (component.known[i] == Tristate.FALSE) {
+                        applyForced(id, PatternCache.SAFE);
+                    } else if (component.known[i] == Tristate.TRUE) {
+                        applyForced(id, PatternCache.TORNADO);
                     }
                 }
             }
-            if (game.getUnmarkedCells().isEmpty()) {
+
+            if (game.countUnmarked() == 0) {
+                break;
+            }
+            // a sweep without a move leaves the knowledge base unchanged, so the next sweep would repeat it
+            if (game.getNumCellsProbed() + game.getNumFlags() == movesBefore && (!onStuck() || loss)) {
+                stuck = !loss;
                 break;
             }
             steps += 1;
@@ -155,147 +203,523 @@ public class IntermediateAgent extends Agent {
             }
         }
 
-        System.out.println("Final map");
+        out.println("Final map");
         displayGameState();
 
-        if (!loss) {}
-
-        this.loss = !game.hasFoundAllTornadoes();
-        if (this.loss && steps > maxSteps) {
-            System.out.println("Result: Agent not terminated");
+        boolean dead = this.loss; // only a guess made by onStuck can probe a tornado
+        this.loss = dead || !game.hasFoundAllTornadoes();
+        if (!dead && this.loss && (stuck || steps > maxSteps)) {
+            reportResult(NOT_TERMINATED);
             // print game outcome
         } else if (!this.loss) {
-            System.out.println("Result: Agent alive: all solved");
+            reportResult(ALIVE);
         } else {
-            System.out.println("Result: Agent dead: found mine");
+            reportResult(DEAD);
+
+        }
+
+    }
+
+    /**
+     * Called when a whole sweep has made no move, so the knowledge base cannot decide any unmarked cell.
+     * The intermediate agent does not guess and gives up; subclasses override this to make a move.
+     * A subclass that probes a tornado sets loss, which ends the game.
+     * @return true if a move was made and the sweeps should continue
+     */
+    protected boolean onStuck() {
+        return false;
+    }
 
+    /**
+     * Keeps the knowledge base up to date with a changed cell. The cell waits to be added to the
+     * session, and only the constraints of its probed neighbours are invalidated: a neighbour whose
+     * last unknown cell this was is retired from the frontier.
+     * @param id the linear index of the cell that changed
+     */
+    @Override
+    protected void onCellChanged(int id) {
+        changedCells.addLast(id);
+        Neighbourhood nb = game.getNeighbourhood();
+        for (int k = nb.start(id); k < nb.end(id); k++) {
+            int n = nb.neighbour(k);
+            if (game.isProbed(n)) {
+                constraints[n] = null;
+                updateFrontier(n);
+                touchSubsetRule(n);
+            }
+        }
+        if (game.isProbed(id)) {
+            updateFrontier(id);
+            touchSubsetRule(id);
         }
+    }
 
+    /**
+     * Marks a clue for the subset rule, if it is used.
+     * @param id the linear index of a probed cell
+     */
+    private void touchSubsetRule(int id) {
+        if (subsetRule != null) {
+            subsetRule.touch(id);
+        }
+    }
+
+    /**
+     * Returns whether a probed cell still has unknown neighbours.
+     * @param id the linear index of the cell
+     * @return true if the cell is in the frontier clues
+     */
+    boolean isFrontierClue(int id) {
+        return (frontierClues[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Adds a probed cell to the frontier clues if it has unknown neighbours, and removes it otherwise.
+     * @param id the linear index of a probed cell
+     */
+    private void updateFrontier(int id) {
+        if (countUnmarkedNeighbours(id) > 0) {
+            frontierClues[id >>> 6] |= 1L << id;
+        } else {
+            frontierClues[id >>> 6] &= ~(1L << id);
+            constraints[id] = null;
+        }
+    }
+
+    /**
+     * Returns the clue constraint of a probed cell with unknown neighbours, building it only
+     * if a neighbour has changed since it was last built.
+     * @param id the linear index of the probed cell
+     * @return the constraint, as built by clueConstraint
+     */
+    private int[] constraintOf(int id) {
+        if (constraints[id] == null) {
+            constraints[id] = clueConstraint(id);
+        }
+        return constraints[id];
     }
 
     /**
      * After ever probe its necessary to add the new clues to the knowledge base.
-     * Hence update this function updates the knowledgebase
+     * Hence update this function adds the clue of every cell probed since the last update, and a unit
+     * clause for every cell probed or flagged since then, to the SAT session.
+     * Only the changed cells are visited, so the cost does not depend on the size of the board.
+     * Most sweeps are solved on per-component sessions, so the game-wide session is only brought up
+     * to date by solveFrontier, right before it is asked.
      */
-    private void updateKnowledgeBase() {
-        // get a list of all probed cells
-        Vector<Cell> probedCells = game.getProbedCells();
+    protected void updateKnowledgeBase() {
+        long start = metrics != null ? System.nanoTime() : 0;
+        InferenceEvents.KnowledgeBaseUpdate event =
+                InferenceEvents.KNOWLEDGE_BASE_UPDATE.isEnabled() ? new InferenceEvents.KnowledgeBaseUpdate() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int added = 0; // constraints added by this update
+        while (!changedCells.isEmpty()) {
+            int id = changedCells.pollFirst();
+            if (game.isFlagged(id)) {
+                session.addFact(id, true);
+                added++;
+            } else if (game.isProbed(id)) {
+                // the clue is only added once, relative to the cells known at this point
+                if (countUnmarkedNeighbours(id) > 0) {
+                    session.addExactly(constraintOf(id));
+                    added++;
+                }
+                session.addFact(id, false);
+                added++;
+            }
+        }
+        if (metrics != null) {
+            metrics.count(AgentMetrics.Counter.KB_UPDATES, 1);
+            metrics.count(AgentMetrics.Counter.KB_CONSTRAINTS, added);
+            metrics.time(AgentMetrics.Timer.KB_UPDATE, start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.constraints = added;
+            event.commit();
+        }
+    }
 
-        // Create the KB from the probed Cells
-        knowledgeString = convertKB(probedCells);
+    /**
+     * Splits the frontier into independent components. Two unknown cells belong to the same
+     * component if they are both neighbours of a probed cell, so each component carries the
+     * clue constraints of its own probed cells only.
+     * @return the components of the frontier, in board order of their first clue cell
+     */
+    public Vector<FrontierComponent> getFrontierComponents() {
+        int size = game.getSize();
+        Vector<Cell> clueCells = new Vector<>();
+        Vector<Integer> clueRoots = new Vector<>();
+        IntDeque frontier = new IntDeque(64); // the unknown cells entered in parent
+
+        Neighbourhood nb = game.getNeighbourhood();
+        for (int w = 0; w < frontierClues.length; w++) {
+            for (long bits = frontierClues[w]; bits != 0; bits &= bits - 1) {
+                int clue = (w << 6) + Long.numberOfTrailingZeros(bits);
+                int first = -1;
+                for (int k = nb.start(clue); k < nb.end(clue); k++) {
+                    int id = nb.neighbour(k);
+                    if (!game.isUnmarked(id)) {
+                        continue;
+                    }
+                    if (parent[id] < 0) {
+                        parent[id] = id;
+                        frontier.addLast(id);
+                    }
+                    if (first < 0) {
+                        first = id;
+                    } else {
+                        parent[findRoot(parent, id)] = findRoot(parent, first);
+                    }
+                }
+                clueCells.add(game.getCell(clue / size, clue % size));
+                clueRoots.add(first);
+            }
+        }
+
+        // group the clue cells and the unknown cells by the root of their set
+        Map<Integer, FrontierComponent> byRoot = new LinkedHashMap<>();
+        for (int i = 0; i < clueCells.size(); i++) {
+            FrontierComponent component = byRoot.computeIfAbsent(findRoot(parent, clueRoots.get(i)), r -> new FrontierComponent());
+            component.clueCells.add(clueCells.get(i));
+            component.constraints.add(constraintOf(clueCells.get(i).getId()));
+        }
+        int[] ids = new int[frontier.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = frontier.get(i);
+        }
+        java.util.Arrays.sort(ids);
+        for (int id : ids) {
+            byRoot.get(findRoot(parent, id)).unknownCells.add(game.getCell(id / size, id % size));
+        }
+        // the forest is reset cell by cell, so the cost follows the frontier rather than the board
+        for (int id : ids) {
+            parent[id] = -1;
+        }
+        return new Vector<>(byRoot.values());
+    }
+
+    /**
+     * Returns the root of the set containing id, compressing the path on the way.
+     * @param parent the union-find forest
+     * @param id the element to look up
+     * @return the root of the set
+     */
+    private static int findRoot(int[] parent, int id) {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
     }
 
     /**
-     *This method returns all permutations of a given ArrayList of strings.
-     * @param list the ArrayList of strings to be permuted
-     * @return an ArrayList of ArrayList of strings containing all possible permutations of the input list
+     * Decides the cells of the components that are forced by their window, so the solver
+     * is not asked about them.
+     * @param components the components of the frontier
      */
-    public ArrayList<ArrayList<String>> makePermutations(ArrayList<String> list) {
-        if (list.size() == 0) {
-            ArrayList<ArrayList<String>> result = new ArrayList<>();
-            result.add(new ArrayList<>());
-            return result;
-        }
-        ArrayList<ArrayList<String>> list2 = new ArrayList<>();
-        String firstElement = list.remove(0);
-        ArrayList<ArrayList<String>> recursiveReturn = makePermutations(list);
-        for (ArrayList<String> li : recursiveReturn) {
-            for (int index = 0; index <= li.size(); index++) {
-                ArrayList<String> temp = new ArrayList<>(li);
-                temp.add(index, firstElement);
-                list2.add(temp);
+    private void lookupComponents(Vector<FrontierComponent> components) {
+        if (patternCache == null) {
+            return;
+        }
+        for (FrontierComponent component : components) {
+            component.known = new Tristate[component.unknownCells.size()];
+            for (int i = 0; i < component.known.length; i++) {
+                int forced = patternCache.lookup(game, component.unknownCells.get(i).getId());
+                if (forced != PatternCache.UNKNOWN) {
+                    component.known[i] = forced == PatternCache.SAFE ? Tristate.FALSE : Tristate.TRUE;
+                }
             }
         }
-        return list2;
     }
 
-    private int getCountNeighbourFlags(int[] probedNeighbour) {
-        int neighbourFlagsCount = 0;
-        int[][] directions = {{-1,-1}, {-1,0}, {0,-1}, {0,1}, {1,0}, {1,1}};
-        for (int i = 0; i < 6; i++) {
-            int newX = probedNeighbour[0] + directions[i][0];
-            int newY = probedNeighbour[1] + directions[i][1];
-            if (newX >= 0 && newX < game.getSize() && newY >= 0 && newY < game.getSize()) {
-                int[] neighbour = {newX, newY};
-                if (game.getCell(neighbour[0],neighbour[1]).isFlagged()) {
-                    neighbourFlagsCount += 1;
+    /**
+     * Decides the cells of the components that follow from pairs of overlapping clues (see SubsetRule).
+     * Only the clues around the cells changed since the previous sweep are compared.
+     * @param components the components of the frontier
+     */
+    private void applySubsetRule(Vector<FrontierComponent> components) {
+        if (subsetRule == null) {
+            return;
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        if (subsetForced == null) {
+            subsetForced = new Tristate[game.getSize() * game.getSize()];
+        }
+        Tristate[] forced = subsetForced;
+        int decided = subsetRule.apply(id -> isFrontierClue(id) ? constraintOf(id) : null, forced);
+        for (int c = 0; c < components.size() && decided > 0; c++) {
+            FrontierComponent component = components.get(c);
+            if (component.known == null) {
+                component.known = new Tristate[component.unknownCells.size()];
+            }
+            for (int i = 0; i < component.known.length; i++) {
+                int id = component.unknownCells.get(i).getId();
+                Tristate value = forced[id];
+                forced[id] = null; // the rule only decides frontier cells, so this clears every entry it set
+                if (component.known[i] == null && value != null) {
+                    component.known[i] = value;
+                    if (metrics != null) {
+                        metrics.count(value == Tristate.TRUE ? AgentMetrics.Counter.SUBSET_TORNADOES
+                                : AgentMetrics.Counter.SUBSET_SAFE, 1);
+                    }
                 }
             }
         }
-        return neighbourFlagsCount;
+        if (metrics != null) {
+            metrics.count(AgentMetrics.Counter.SUBSET_PAIRS, subsetRule.getPairs());
+            metrics.time(AgentMetrics.Timer.SUBSET, start);
+        }
     }
 
     /**
-     *
-     * Constructs a clause from all the discovered cells surrounding the given cell.
-     * A clause is a disjunction of literals, where a literal is either a cell marked as danger,
-     * represented by "Txy"
-     * @param cell the cell for which the clause is being constructed
-     * @return a string representing the clause constructed from the discovered cells around the given cell
+     * Decides the cells of the components that are pinned by their clue equations (see LinearSolver),
+     * so the solver is only asked about the rest. Cells known from the pattern cache are constants
+     * of the equations.
+     * @param components the components of the frontier
+     * @param deadline the time in milliseconds since the epoch at which to stop, 0 for none
      */
-    public String makeClause(Cell cell) {
-        // get all the neighbours of the cell
-        Vector<int[]> neighbours = getNeighbours(cell.getX(), cell.getY());
-        // contains unknown neighbours of parameter cell
-        ArrayList<Cell> unknownCells = new ArrayList<>();
-        // contains marked neighbours of parameter cell
-        ArrayList<Cell> flaggedNeighbours = new ArrayList<>();
-        ArrayList<String> flaggedLiterals = new ArrayList<>();
-
-        // add the flaggedNeighbours and unmarked unflagged cells lists
-        for (int[] c : neighbours) {
-            if (game.getCell(c[0],c[1]).isFlagged()) {
-                flaggedNeighbours.add(game.getCell(c[0],c[1]));
-            } else if (!game.getCell(c[0],c[1]).isProbed()) {
-                unknownCells.add(game.getCell(c[0],c[1]));
+    private void solveLinear(Vector<FrontierComponent> components, long deadline) {
+        if (!linearStage) {
+            return;
+        }
+        long start = metrics != null ? System.nanoTime() : 0;
+        for (FrontierComponent component : components) {
+            if (isDecided(component)) {
+                continue;
+            }
+            if (isPast(deadline)) {
+                fellBack = true;
+                break;
             }
+            int[] ids = new int[component.unknownCells.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = component.unknownCells.get(i).getId();
+            }
+            Tristate[] pinned = LinearSolver.solve(component.constraints, ids, component.known);
+            if (component.known == null) {
+                component.known = new Tristate[ids.length];
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (component.known[i] == null && pinned[i] != null) {
+                    component.known[i] = pinned[i];
+                    if (metrics != null) {
+                        metrics.count(pinned[i] == Tristate.TRUE ? AgentMetrics.Counter.LINEAR_TORNADOES
+                                : AgentMetrics.Counter.LINEAR_SAFE, 1);
+                    }
+                }
+            }
+        }
+        if (metrics != null) {
+            metrics.time(AgentMetrics.Timer.LINEAR, start);
+        }
+    }
+
+    /**
+     * Returns the deadline of a sweep starting now: the end of the move budget or of the game
+     * budget, whichever comes first.
+     * @return the time in milliseconds since the epoch, 0 for no deadline
+     */
+    private long sweepDeadline() {
+        long deadline = moveBudgetMillis > 0 ? System.currentTimeMillis() + moveBudgetMillis : 0;
+        if (gameDeadline != 0 && (deadline == 0 || gameDeadline < deadline)) {
+            deadline = gameDeadline;
         }
+        return deadline;
+    }
 
-        // for each of the cell create a literal
-        ArrayList<String> literals = new ArrayList<>();
-        for (Cell unknownCell : unknownCells) {
-            literals.add("T" + unknownCell.getX() + unknownCell.getY());
+    /**
+     * Returns whether a deadline has passed.
+     * @param deadline the time in milliseconds since the epoch, 0 for none
+     * @return true if the deadline is set and has passed
+     */
+    private static boolean isPast(long deadline) {
+        return deadline != 0 && System.currentTimeMillis() >= deadline;
+    }
+
+    /**
+     * Returns whether the earlier stages decided every cell of a component.
+     * @param component the component
+     * @return true if no cell is left to solve
+     */
+    private static boolean isDecided(FrontierComponent component) {
+        if (component.known == null) {
+            return false;
         }
-        for (Cell markedCell: flaggedNeighbours) {
-            flaggedLiterals.add("T" + markedCell.getX() + markedCell.getY());
+        for (Tristate value : component.known) {
+            if (value == null) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * Solves every component on its own SAT session on the common fork-join pool.
+     * The results replace the known cells of each component (see FrontierComponent.call).
+     * @param components the components of the frontier
+     * @param deadline the time in milliseconds since the epoch at which the solver gives up, 0 for none
+     */
+    private void solveComponents(Vector<FrontierComponent> components, long deadline) {
+        for (FrontierComponent component : components) {
+            component.metrics = metrics;
+            component.parallelism = portfolioParallelism;
+            component.deadline = deadline;
+        }
+        List<Future<Tristate[]>> futures = ForkJoinPool.commonPool().invokeAll(components);
+        for (int i = 0; i < components.size(); i++) {
+            try {
+                Tristate[] componentResults = futures.get(i).get();
+                componentSolverCalls += components.get(i).solverCalls;
+                fellBack |= components.get(i).timeouts > 0;
+                components.get(i).known = componentResults;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                out.println(ie);
+            } catch (ExecutionException ee) {
+                out.println(ee.getCause());
+            }
+        }
+    }
+
+    /**
+     * Solves the frontier on the game-wide session, which already holds every clue.
+     * The results fill in the known cells of the component (see FrontierComponent.call).
+     * @param components the frontier, in at most one component
+     * @param deadline the time in milliseconds since the epoch at which the solver gives up, 0 for none
+     */
+    private void solveFrontier(Vector<FrontierComponent> components, long deadline) {
+        if (components.isEmpty()) {
+            return;
+        }
+        FrontierComponent component = components.get(0);
+        if (component.known == null) {
+            component.known = new Tristate[component.unknownCells.size()];
+        }
+        int[] positions = new int[component.known.length]; // positions of the cells the solver decides
+        int numOpen = 0;
+        for (int i = 0; i < component.known.length; i++) {
+            if (component.known[i] == null) {
+                positions[numOpen++] = i;
+            }
+        }
+        if (numOpen > 0) {
+            int[] open = new int[numOpen];
+            for (int i = 0; i < numOpen; i++) {
+                open[i] = component.unknownCells.get(positions[i]).getId();
+            }
+            updateKnowledgeBase();
+            int timeoutsBefore = session.getTimeouts();
+            Tristate[] backbone = session.backbone(open, deadline);
+            fellBack |= session.getTimeouts() > timeoutsBefore;
+            for (int i = 0; i < numOpen; i++) {
+                component.known[positions[i]] = backbone[i];
+            }
+        }
+    }
 
-        // get the clues on neighbouring tornadoes
-        int nTornadoes = Character.getNumericValue(cell.getInfo());
-        int nUnknowns = unknownCells.size(); // number of neighbouring cells that are unknown
-        // number of neihbouring cells marked as flagged
-        int nMarked = getCountNeighbourFlags(new int[] {cell.getX(),cell.getY()});
+    /**
+     * Returns the CNF template for the constraint "exactly k of n literals are true".
+     * Each clause is an array of 1-based literal positions, negative for a negated literal.
+     * At-most-k is every (k+1)-subset with all literals negated and at-least-k is every
+     * (n-k+1)-subset with all literals positive. Templates are built once per (n, k) pair.
+     * @param n the number of literals
+     * @param k the number of literals that must be true
+     * @return the clauses of the template
+     */
+    static int[][] exactlyTemplate(int n, int k) {
+        return CC_TEMPLATES.computeIfAbsent(n * 8 + k, key -> {
+            ArrayList<int[]> clauses = new ArrayList<>();
+            for (int mask = 1; mask < (1 << n); mask++) {
+                int bits = Integer.bitCount(mask);
+                boolean atMost = bits == k + 1;
+                boolean atLeast = bits == n - k + 1;
+                if (!atMost && !atLeast) {
+                    continue;
+                }
+                int[] clause = new int[bits];
+                int l = 0;
+                for (int i = 0; i < n; i++) {
+                    if ((mask & (1 << i)) != 0) {
+                        clause[l++] = i + 1;
+                    }
+                }
+                if (atMost) {
+                    int[] negated = new int[bits];
+                    for (int i = 0; i < bits; i++) {
+                        negated[i] = -clause[i];
+                    }
+                    clauses.add(negated);
+                }
+                if (atLeast) {
+                    clauses.add(clause);
+                }
+            }
+            return clauses.toArray(new int[0][]);
+        });
+    }
 
-        // generate all the permutations used for negation
-        ArrayList<ArrayList<String>> clauseCombinations = makePermutations(literals);
-        for (int i = 0; i < clauseCombinations.size(); i++) {
-            ArrayList<String> presentClause = clauseCombinations.get(i);
-            for (int j = 0; j < nUnknowns - (nTornadoes - nMarked); j++) {
-                String clause = presentClause.get(j);
-                presentClause.remove(clause);
-                clause = "~" + clause;
-                presentClause.add(0, clause);
+    /**
+     * Returns the constraint of a probed cell on its unknown neighbours: exactly
+     * (clue - flagged neighbours) of them are tornadoes.
+     * @param id the linear index of the probed cell
+     * @return the number of tornadoes k followed by the linear indexes of the unknown neighbours
+     */
+    public int[] clueConstraint(int id) {
+        Neighbourhood nb = game.getNeighbourhood();
+        int[] constraint = new int[countUnmarkedNeighbours(id) + 1];
+        int n = 1;
+        for (int k = nb.start(id); k < nb.end(id); k++) {
+            if (game.isUnmarked(nb.neighbour(k))) {
+                constraint[n++] = nb.neighbour(k);
             }
         }
+        constraint[0] = Character.getNumericValue(game.getInfo(id)) - countFlaggedNeighbours(id);
+        return constraint;
+    }
+
+    /**
+     *
+     * Constructs the constraint for all the discovered cells surrounding the given cell.
+     * The constraint states that exactly (clue - flagged neighbours) of the unknown neighbours
+     * are tornadoes and is written in CNF as a conjunction of clauses, where a literal is a cell
+     * marked as danger, represented by "T" and its linear index.
+     * The agent adds constraints to its session with clueConstraint; this text form is for reading the KB.
+     * @param cell the cell for which the clause is being constructed
+     * @return a CNF string representing the constraint on the discovered cells around the given cell
+     */
+    public String makeClause(Cell cell) {
+        int[] constraint = clueConstraint(cell.getId());
+        int k = constraint[0];
+        int nUnknowns = constraint.length - 1; // number of neighbouring cells that are unknown
+        if (k < 0 || k > nUnknowns) {
+            return "$false";
+        }
 
-        // build the logical formula string
+        // build the logical formula string in CNF from the cached template
         StringBuilder stringBuilder = new StringBuilder();
-        for (int i = 0; i < clauseCombinations.size(); i++) {
-            ArrayList<String> currentClause = clauseCombinations.get(i);
+        for (int[] templateClause : exactlyTemplate(nUnknowns, k)) {
             stringBuilder.append("(");
-            for (int j = 0; j < currentClause.size(); j++) {
-                String clause = currentClause.get(j);
-                stringBuilder.append(clause);
-                stringBuilder.append("&");
+            for (int lit : templateClause) {
+                if (lit < 0) {
+                    stringBuilder.append("~");
+                }
+                stringBuilder.append("T").append(constraint[Math.abs(lit)]);
+                stringBuilder.append("|");
             }
-            // delete trailing &
+            // delete trailing |
             stringBuilder.deleteCharAt(stringBuilder.length() - 1);
             stringBuilder.append(")");
-            stringBuilder.append("|");
+            stringBuilder.append("&");
         }
 
-        // delete trailing |
-        stringBuilder.deleteCharAt(stringBuilder.length() - 1);
+        // delete trailing &
+        if (stringBuilder.length() > 0) {
+            stringBuilder.deleteCharAt(stringBuilder.length() - 1);
+        } else {
+            stringBuilder.append("$true");
+        }
 
         String finalString =stringBuilder.toString();
         return finalString;
@@ -317,8 +741,7 @@ public class IntermediateAgent extends Agent {
         // iterate over all probed cells
         for (int i = 0; i < probedCells.size(); i++) {
             Cell cell = probedCells.get(i);
-            int[] coord = new int[] {cell.getX(), cell.getY()};
-            if (getUnprobedUnflagCount(coord) > 0) { // check if count of unmarked unflagged > 0
+            if (countUnmarkedNeighbours(cell.getId()) > 0) { // check if count of unmarked unflagged > 0
                 // for each cell, get a single clause
                 String kClause = makeClause(cell); // clause for your Knowlegede base
                 if (kClause != "") {
@@ -0,0 +1,233 @@
+import org.logicng.datastructures.Tristate;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * LinearSolver deduces forced cells from the clue constraints of a frontier component by linear algebra.
+ * Each clue is the equation "the sum of the tornado variables of its unknown neighbours equals the
+ * clue minus the flagged neighbours", with every variable 0 or 1.
+ *
+ * The equations are reduced to reduced row echelon form by fraction-free integer Gaussian
+ * elimination, with every row divided by the gcd of its entries. A row pins every one of its variables
+ * when its right-hand side equals the largest or the smallest value its left-hand side can take:
+ * at the largest, the variables with a positive coefficient are tornadoes and those with a negative
+ * coefficient are safe, and the other way round at the smallest. Every row is a combination of clues,
+ * so what it pins holds on the board. This finds the patterns of SPS and many that need several clues,
+ * in polynomial time, and leaves to the SAT solver only the cells it cannot pin.
+ *
+ * The rows are kept sparse throughout, as the ascending columns of their nonzero entries and the
+ * entries themselves, and a combination of two rows merges their columns. The pivot of each column is
+ * the pending row that starts with it, which gives the same reduced rows as dense elimination in column
+ * order. A clue has at most six cells, so a row only fills in as far as the clues it is combined with,
+ * and a component of n cells and m clues costs O(m^2) row operations of at most n entries each.
+ */
+public class LinearSolver {
+    private static final long LIMIT = 1L << 40; // entries beyond this stop the elimination, which also stops on any overflow
+
+    /**
+     * One sparse equation: the sum of vals[i] times the variable of column cols[i] equals rhs.
+     */
+    private static final class Row {
+        final int[] cols; // ascending columns of the nonzero entries
+        final long[] vals; // the entries, none of them zero
+        final long rhs;
+
+        Row(int[] cols, long[] vals, long rhs) {
+            this.cols = cols;
+            this.vals = vals;
+            this.rhs = rhs;
+        }
+
+        /**
+         * Returns the entry of a column.
+         * @param column the column
+         * @return the entry, 0 if the row does not have the column
+         */
+        long get(int column) {
+            int i = Arrays.binarySearch(cols, column);
+            return i >= 0 ? vals[i] : 0;
+        }
+    }
+
+    /**
+     * Deduces the forced cells of a component.
+     * @param constraints the clue constraints, k followed by the linear indexes of the cells
+     * @param cells the linear indexes of the unknown cells of the component, ascending
+     * @param known cells already known, TRUE for a tornado and FALSE for a safe cell, null entries unknown; may be null
+     * @return for each cell, TRUE if it must be a tornado, FALSE if it must be safe, null if the equations do not pin it
+     */
+    public static Tristate[] solve(Vector<int[]> constraints, int[] cells, Tristate[] known) {
+        Tristate[] forced = new Tristate[cells.length];
+
+        // one row per constraint, over the columns of its unknown cells; the cells of a constraint ascend
+        Row[] rows = new Row[constraints.size()];
+        int numRows = 0;
+        for (int[] constraint : constraints) {
+            int[] cols = new int[constraint.length - 1];
+            int size = 0;
+            long rhs = constraint[0];
+            for (int i = 1; i < constraint.length; i++) {
+                int column = Arrays.binarySearch(cells, constraint[i]);
+                if (known != null && known[column] != null) {
+                    // a known cell is a constant of the equation
+                    rhs -= known[column] == Tristate.TRUE ? 1 : 0;
+                } else {
+                    cols[size++] = column;
+                }
+            }
+            long[] vals = new long[size];
+            Arrays.fill(vals, 1);
+            rows[numRows++] = new Row(Arrays.copyOf(cols, size), vals, rhs);
+        }
+
+        // the clues themselves pin their cells in the cases of SPS
+        for (int r = 0; r < numRows; r++) {
+            readOff(rows[r], forced);
+        }
+        if (eliminate(rows, numRows)) {
+            for (int r = 0; r < numRows; r++) {
+                if (rows[r] != null) {
+                    readOff(rows[r], forced);
+                }
+            }
+        }
+        return forced;
+    }
+
+    /**
+     * Reduces the rows to reduced row echelon form, in place. Rows that reduce to zero are set to null.
+     * @param rows the rows
+     * @param numRows the number of rows
+     * @return false if an entry grew past the limit or overflowed and the elimination stopped early
+     */
+    private static boolean eliminate(Row[] rows, int numRows) {
+        // rows[0, pivots) are the pivot rows, rows[pivots, numRows) the rows still to place
+        int pivots = 0;
+        while (pivots < numRows) {
+            // the next pivot is the pending row with the smallest first column: every column before it
+            // is either the pivot of an earlier row or absent from all the pending rows
+            int found = -1;
+            for (int r = pivots; r < numRows; r++) {
+                if (rows[r].cols.length == 0) {
+                    continue;
+                }
+                if (found < 0 || rows[r].cols[0] < rows[found].cols[0]) {
+                    found = r;
+                }
+            }
+            if (found < 0) {
+                break; // every pending row is zero
+            }
+            Row pivot = rows[found];
+            rows[found] = rows[pivots];
+            rows[pivots] = pivot;
+
+            int column = pivot.cols[0];
+            long a = pivot.vals[0];
+            for (int r = 0; r < numRows; r++) {
+                long e = r == pivots ? 0 : rows[r].get(column);
+                if (e == 0) {
+                    continue;
+                }
+                // row = a * row - e * pivot, which clears the column without fractions
+                Row row = combine(a, rows[r], e, pivot);
+                if (row == null) {
+                    return false;
+                }
+                rows[r] = row;
+            }
+            pivots++;
+        }
+        for (int r = pivots; r < numRows; r++) {
+            rows[r] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a * row - e * pivot, merging the columns of the two rows and divided by the gcd of its entries.
+     * @return the new row, or null if an entry grew past the limit or overflowed
+     */
+    private static Row combine(long a, Row row, long e, Row pivot) {
+        int[] cols = new int[row.cols.length + pivot.cols.length];
+        long[] vals = new long[cols.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        try {
+            while (i < row.cols.length || j < pivot.cols.length) {
+                int column;
+                long value;
+                if (j == pivot.cols.length || (i < row.cols.length && row.cols[i] < pivot.cols[j])) {
+                    column = row.cols[i];
+                    value = Math.multiplyExact(a, row.vals[i++]);
+                } else if (i == row.cols.length || pivot.cols[j] < row.cols[i]) {
+                    column = pivot.cols[j];
+                    value = Math.negateExact(Math.multiplyExact(e, pivot.vals[j++]));
+                } else {
+                    column = row.cols[i];
+                    value = Math.subtractExact(Math.multiplyExact(a, row.vals[i++]), Math.multiplyExact(e, pivot.vals[j++]));
+                }
+                if (Math.abs(value) > LIMIT) {
+                    return null;
+                }
+                if (value != 0) {
+                    cols[size] = column;
+                    vals[size++] = value;
+                }
+            }
+            long rhs = Math.subtractExact(Math.multiplyExact(a, row.rhs), Math.multiplyExact(e, pivot.rhs));
+            if (Math.abs(rhs) > LIMIT) {
+                return null;
+            }
+            long gcd = Math.abs(rhs);
+            for (int k = 0; k < size; k++) {
+                gcd = gcd(gcd, Math.abs(vals[k]));
+            }
+            if (gcd > 1) {
+                for (int k = 0; k < size; k++) {
+                    vals[k] /= gcd;
+                }
+                rhs /= gcd;
+            }
+            return new Row(Arrays.copyOf(cols, size), Arrays.copyOf(vals, size), rhs);
+        } catch (ArithmeticException overflow) {
+            return null; // none of the reduced rows is read
+        }
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Pins the variables of a row whose right-hand side is at a bound of its left-hand side.
+     * @param row the row
+     * @param forced the cells pinned so far, by column, updated
+     */
+    private static void readOff(Row row, Tristate[] forced) {
+        long max = 0; // every positive variable a tornado, every negative one safe
+        long min = 0; // the other way round
+        for (long value : row.vals) {
+            if (value > 0) {
+                max += value;
+            } else {
+                min += value;
+            }
+        }
+        long rhs = row.rhs;
+        if (max == min || (rhs != max && rhs != min)) {
+            return; // no variable in the row, or a right-hand side strictly between the bounds
+        }
+        boolean atMax = rhs == max;
+        for (int i = 0; i < row.cols.length; i++) {
+            forced[row.cols[i]] = (row.vals[i] > 0) == atMax ? Tristate.TRUE : Tristate.FALSE;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A MoveTrace records the moves made on games into a compact append-only binary file, so any
+ * intermediate state of a game can be rebuilt later by TraceReplay without the agents or the solver.
+ * Records are collected in a direct buffer and written through a FileChannel when it fills up, on
+ * flush() and on close(), so recording a move costs a few bytes of buffer and no system call.
+ *
+ * Format: the magic bytes "TRC1", then records. Every record starts with the varint (value << 2 | action):
+ *  - PROBE, value the linear index of the probed cell, then the varint of the microseconds since the previous record
+ *  - FLAG, value the linear index of the flagged cell, then the microseconds likewise
+ *  - CONTROL, value MARK, ROLLBACK or COMMIT of the undo journal of Game, then the microseconds likewise
+ *  - GAME, value the size of the board, starting a new game: then the varint of the start time in
+ *    milliseconds since the epoch, the varint of the number of tornadoes and the varint gaps between
+ *    the linear indexes of consecutive tornadoes, the first counted from -1
+ * Varints are little-endian base 128, as in protocol buffers.
+ */
+public class MoveTrace implements AutoCloseable {
+    static final int PROBE = 0;
+    static final int FLAG = 1;
+    static final int CONTROL = 2;
+    static final int GAME = 3;
+
+    static final int MARK = 0;
+    static final int ROLLBACK = 1;
+    static final int COMMIT = 2;
+
+    static final byte[] MAGIC = {'T', 'R', 'C', '1'};
+    private static final int MAX_RECORD = 20; // two varints of at most ten bytes each
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private long lastNanos; // time of the previous record
+
+    private MoveTrace(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a trace file for appending, writing the magic bytes if the file is new or empty.
+     * @param path the file
+     * @return the trace
+     * @throws IOException if the file cannot be opened
+     */
+    public static MoveTrace open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        MoveTrace trace = new MoveTrace(channel);
+        if (channel.size() == 0) {
+            trace.buffer.put(MAGIC);
+        }
+        return trace;
+    }
+
+    /**
+     * Starts the record of a new game, with its board.
+     * @param game the game, before any move
+     */
+    public synchronized void startGame(Game game) {
+        int size = game.getSize();
+        lastNanos = System.nanoTime();
+        reserve(MAX_RECORD + 10);
+        putVarint(((long) size << 2) | GAME);
+        putVarint(System.currentTimeMillis());
+        putVarint(game.getNumTornadoes());
+        int previous = -1;
+        for (int id = 0; id < size * size; id++) {
+            if (game.isTornado(id)) {
+                reserve(10);
+                putVarint(id - previous);
+                previous = id;
+            }
+        }
+    }
+
+    /**
+     * Records a probe.
+     * @param id the linear index of the cell
+     */
+    public synchronized void probe(int id) {
+        put(PROBE, id);
+    }
+
+    /**
+     * Records a flag.
+     * @param id the linear index of the cell
+     */
+    public synchronized void flag(int id) {
+        put(FLAG, id);
+    }
+
+    /**
+     * Records an operation on the undo journal of the game.
+     * @param operation MARK, ROLLBACK or COMMIT
+     */
+    public synchronized void control(int operation) {
+        put(CONTROL, operation);
+    }
+
+    private void put(int action, int value) {
+        reserve(MAX_RECORD);
+        long now = System.nanoTime();
+        putVarint(((long) value << 2) | action);
+        putVarint((now - lastNanos) / 1000);
+        lastNanos = now;
+    }
+
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Makes room in the buffer, writing it out if needed.
+     * @param bytes the number of bytes about to be put
+     */
+    private void reserve(int bytes) {
+        if (buffer.remaining() < bytes) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file.
+     */
+    public synchronized void flush() {
+        drain();
+    }
+
+    /**
+     * Writes the buffered records and closes the file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        drain();
+        channel.close();
+    }
+}
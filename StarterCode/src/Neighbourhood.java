@@ -0,0 +1,91 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Neighbourhood class holds the hexagonal adjacency of a size x size board.
+ * It is computed once per board size and shared by every game of that size. Only the sizes used most
+ * recently are kept, so generating boards of many sizes does not hold on to all their tables.
+ * The neighbours are stored in compressed sparse row form over linear cell ids (x * size + y):
+ * the neighbours of cell id are neighbour(k) for start(id) <= k < end(id).
+ * Iterating them does not allocate.
+ */
+public final class Neighbourhood {
+    // the six neighbours of a cell on the hexagonal board
+    private static final int[][] DIRECTIONS = {{-1,-1}, {-1,0}, {0,-1}, {0,1}, {1,0}, {1,1}};
+    private static final int CACHED_SIZES = 8; // the number of board sizes kept
+    private static final Map<Integer, Neighbourhood> CACHE = new LinkedHashMap<Integer, Neighbourhood>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Neighbourhood> eldest) {
+            return size() > CACHED_SIZES;
+        }
+    }; // in access order, guarded by the class
+
+    private final int size; // size of the board
+    private final int[] offsets; // offsets[id] is the position of the first neighbour of id in neighbours
+    private final int[] neighbours; // the neighbour ids of all cells, one run per cell
+
+    private Neighbourhood(int size) {
+        this.size = size;
+        this.offsets = new int[size * size + 1];
+        int[] buffer = new int[size * size * DIRECTIONS.length];
+        int count = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                offsets[x * size + y] = count;
+                for (int[] direction : DIRECTIONS) {
+                    int newX = x + direction[0];
+                    int newY = y + direction[1];
+                    if (newX >= 0 && newX < size && newY >= 0 && newY < size) {
+                        buffer[count++] = newX * size + newY;
+                    }
+                }
+            }
+        }
+        offsets[size * size] = count;
+        this.neighbours = java.util.Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * Returns the shared neighbourhood of a board of the given size.
+     * @param size the size of the board
+     * @return the neighbourhood
+     */
+    public static synchronized Neighbourhood of(int size) {
+        return CACHE.computeIfAbsent(size, Neighbourhood::new);
+    }
+
+    /**
+     * Returns the size of the board.
+     * @return the size of the board
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the position of the first neighbour of a cell.
+     * @param id the linear index of the cell
+     * @return the first position to pass to neighbour(k)
+     */
+    public int start(int id) {
+        return offsets[id];
+    }
+
+    /**
+     * Returns the position after the last neighbour of a cell.
+     * @param id the linear index of the cell
+     * @return the position after the last one to pass to neighbour(k)
+     */
+    public int end(int id) {
+        return offsets[id + 1];
+    }
+
+    /**
+     * Returns the neighbour stored at a position.
+     * @param k a position between start(id) and end(id) of some cell
+     * @return the linear index of the neighbour
+     */
+    public int neighbour(int k) {
+        return neighbours[k];
+    }
+}
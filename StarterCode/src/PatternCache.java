@@ -0,0 +1,418 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A PatternCache remembers the deductions made on a local window of the board, so the same
+ * pattern of clues, flags and unknown cells is only solved once across moves and boards.
+ *
+ * The window of a cell is the hexagonal ball of radius 2 around it: the cell, its 6 neighbours and
+ * the 12 cells beyond them. The clues of the centre and its neighbours only involve cells of the
+ * window, so the deductions drawn from them alone are valid on the whole board. Each window is
+ * encoded in a long, 4 bits for the cells at distance 0 and 1 (unknown, flagged, off the board,
+ * or the clue) and 2 bits for the cells at distance 2 (unknown, flagged, off the board or probed).
+ * The key is the smallest encoding under the 12 symmetries of the hexagonal grid, so rotated and
+ * mirrored patterns share one entry.
+ *
+ * The value holds the cells of the window forced to be safe and forced to be tornadoes, as two
+ * masks over the 19 window positions. The cache keeps the most recently used entries up to its capacity.
+ */
+public class PatternCache {
+    /**
+     * How the forced cells of a window are deduced on a miss.
+     */
+    public enum Rule {
+        SPS, // the single point strategy on the centre cell, as in Agent.singlePointStep
+        LOCAL // every assignment of the unknown cells consistent with the clues of the window
+    }
+
+    // the answer for the centre cell
+    public static final int UNKNOWN = 0;
+    public static final int SAFE = 1;
+    public static final int TORNADO = 2;
+
+    private static final int CELLS = 19; // cells of the window
+    private static final int INNER = 7; // cells at distance 0 and 1, whose clues are used
+    private static final int[][] WINDOW = window(); // offsets of the window cells, by distance
+    private static final int[][] WINDOW_NEIGHBOURS = windowNeighbours(); // neighbours of the inner cells in the window
+    private static final int[][] SYMMETRIES = symmetries(); // SYMMETRIES[g][i] is the position of cell i under g
+
+    // codes of the cells in the window
+    private static final int OPEN = 0;
+    private static final int FLAG = 1;
+    private static final int OFF = 2;
+    private static final int CLUE = 3; // CLUE + clue for the inner cells, any clue for the outer ones
+
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final PatternCache SHARED_SPS = new PatternCache(Rule.SPS, DEFAULT_CAPACITY);
+    private static final PatternCache SHARED_LOCAL = new PatternCache(Rule.LOCAL, DEFAULT_CAPACITY);
+
+    private final Rule rule;
+    private final int capacity;
+    private final LinkedHashMap<Long, Long> entries; // canonical window to its safe and tornado masks, in access order
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates an empty cache.
+     * @param rule how the forced cells of a window are deduced
+     * @param capacity the number of entries kept
+     */
+    public PatternCache(Rule rule, int capacity) {
+        this.rule = rule;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                if (size() > PatternCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache shared by all agents for the given rule.
+     * @param rule how the forced cells of a window are deduced
+     * @return the shared cache
+     */
+    public static PatternCache shared(Rule rule) {
+        return rule == Rule.SPS ? SHARED_SPS : SHARED_LOCAL;
+    }
+
+    /**
+     * Returns what the clues around an unmarked cell force it to be.
+     * @param game the game
+     * @param id the linear index of an unmarked cell
+     * @return SAFE, TORNADO or UNKNOWN
+     */
+    public int lookup(Game game, int id) {
+        // the centre is position 0 under every symmetry, so its bits need no mapping back
+        long masks = forcedCells(game, id);
+        if ((masks & 1L) != 0) {
+            return SAFE;
+        } else if ((masks & (1L << 32)) != 0) {
+            return TORNADO;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns the cells of the window of a cell that are forced to be safe or tornadoes.
+     * Bit i of the low word is set if window cell i is safe, bit i of the high word if it is a tornado.
+     * The window cells are the offsets of window() in that order.
+     * @param game the game
+     * @param id the linear index of the centre cell
+     * @return the safe and tornado masks, in board orientation
+     */
+    public long forcedCells(Game game, int id) {
+        int[] codes = encode(game, id);
+
+        // the canonical key and the symmetry that gives it
+        long key = Long.MAX_VALUE;
+        int best = 0;
+        for (int g = 0; g < SYMMETRIES.length; g++) {
+            long k = pack(codes, SYMMETRIES[g]);
+            if (k < key) {
+                key = k;
+                best = g;
+            }
+        }
+
+        Long cached;
+        synchronized (this) {
+            cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (cached != null) {
+            return transform(cached, SYMMETRIES[best], false);
+        }
+
+        long masks = rule == Rule.SPS ? deduceSps(codes) : deduceLocal(codes);
+        synchronized (this) {
+            entries.put(key, transform(masks, SYMMETRIES[best], true));
+        }
+        return masks;
+    }
+
+    /**
+     * Returns the code of every cell of the window of a cell.
+     * @param game the game
+     * @param id the linear index of the centre cell
+     * @return the codes, by window position
+     */
+    private static int[] encode(Game game, int id) {
+        int size = game.getSize();
+        int x = id / size;
+        int y = id % size;
+        int[] codes = new int[CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            int nx = x + WINDOW[i][0];
+            int ny = y + WINDOW[i][1];
+            if (nx < 0 || nx >= size || ny < 0 || ny >= size) {
+                codes[i] = OFF;
+                continue;
+            }
+            int n = nx * size + ny;
+            if (game.isFlagged(n)) {
+                codes[i] = FLAG;
+            } else if (!game.isProbed(n)) {
+                codes[i] = OPEN;
+            } else if (game.getInfo(n) == 't') {
+                codes[i] = FLAG; // a probed tornado is known like a flag
+            } else {
+                codes[i] = i < INNER ? CLUE + Character.getNumericValue(game.getInfo(n)) : CLUE;
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Packs the codes of a window, moved by a symmetry, into a long.
+     * @param codes the codes by window position
+     * @param symmetry the position of each cell under the symmetry
+     * @return 4 bits for each inner position and 2 bits for each outer position
+     */
+    private static long pack(int[] codes, int[] symmetry) {
+        long key = 0;
+        for (int i = 0; i < CELLS; i++) {
+            int j = symmetry[i];
+            int shift = j < INNER ? j * 4 : INNER * 4 + (j - INNER) * 2;
+            key |= (long) codes[i] << shift;
+        }
+        return key;
+    }
+
+    /**
+     * Moves the safe and tornado masks of a window by a symmetry or its inverse.
+     * @param masks the masks, low word safe and high word tornado
+     * @param symmetry the position of each cell under the symmetry
+     * @param forward true to move from board orientation to canonical, false for the reverse
+     * @return the moved masks
+     */
+    private static long transform(long masks, int[] symmetry, boolean forward) {
+        long moved = 0;
+        for (int i = 0; i < CELLS; i++) {
+            int from = forward ? i : symmetry[i];
+            int to = forward ? symmetry[i] : i;
+            moved |= ((masks >>> from) & 1L) << to;
+            moved |= ((masks >>> (32 + from)) & 1L) << (32 + to);
+        }
+        return moved;
+    }
+
+    /**
+     * Applies the single point strategy to the centre: it is safe if a probed neighbour has all its
+     * tornadoes flagged, and a tornado if a probed neighbour needs all its unknown neighbours.
+     * @param codes the codes of the window
+     * @return the masks, with at most the centre set
+     */
+    private static long deduceSps(int[] codes) {
+        for (int p = 1; p < INNER; p++) {
+            if (codes[p] < CLUE) {
+                continue;
+            }
+            int need = codes[p] - CLUE;
+            int unknown = 0;
+            for (int n : WINDOW_NEIGHBOURS[p]) {
+                if (codes[n] == FLAG) {
+                    need--;
+                } else if (codes[n] == OPEN) {
+                    unknown++;
+                }
+            }
+            if (need == 0) {
+                return 1L;
+            } else if (need == unknown) {
+                return 1L << 32;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Enumerates the assignments of the unknown cells next to an inner clue that satisfy every inner clue,
+     * and returns the cells that are the same in all of them.
+     * @param codes the codes of the window
+     * @return the masks of the forced cells
+     */
+    private static long deduceLocal(int[] codes) {
+        // remaining tornadoes and unknown neighbours of each inner clue
+        int[] need = new int[INNER];
+        int[] open = new int[INNER];
+        int variables = 0; // unknown cells next to an inner clue, as a mask
+        for (int p = 0; p < INNER; p++) {
+            if (codes[p] < CLUE) {
+                continue;
+            }
+            need[p] = codes[p] - CLUE;
+            for (int n : WINDOW_NEIGHBOURS[p]) {
+                if (codes[n] == FLAG) {
+                    need[p]--;
+                } else if (codes[n] == OPEN) {
+                    open[p]++;
+                    variables |= 1 << n;
+                }
+            }
+            if (need[p] < 0 || need[p] > open[p]) {
+                return 0; // inconsistent window, nothing can be deduced
+            }
+        }
+        int[] seen = new int[2]; // cells seen safe and seen tornado in some solution
+        solve(codes, variables, 0, need, open, 0, seen);
+        long safe = variables & ~seen[1];
+        long tornado = variables & ~seen[0];
+        if (seen[0] == 0 && seen[1] == 0) {
+            return 0; // no solution
+        }
+        return safe | (tornado << 32);
+    }
+
+    /**
+     * Assigns the unknown cells in window order, pruning on the clues.
+     * @param codes the codes of the window
+     * @param variables the cells to assign, as a mask
+     * @param from the first window position not yet considered
+     * @param need the remaining tornadoes of each inner clue
+     * @param open the unassigned unknown neighbours of each inner clue
+     * @param tornadoes the cells assigned a tornado so far, as a mask
+     * @param seen accumulates the cells seen safe (index 0) and tornado (index 1) in a solution
+     */
+    private static void solve(int[] codes, int variables, int from, int[] need, int[] open, int tornadoes, int[] seen) {
+        int cell = from;
+        while (cell < CELLS && (variables & (1 << cell)) == 0) {
+            cell++;
+        }
+        if (cell == CELLS) {
+            seen[1] |= tornadoes;
+            seen[0] |= variables & ~tornadoes;
+            return;
+        }
+        for (int tornado = 0; tornado <= 1; tornado++) {
+            boolean consistent = true;
+            for (int p = 0; p < INNER; p++) {
+                if (codes[p] >= CLUE && isNeighbour(p, cell)) {
+                    open[p]--;
+                    need[p] -= tornado;
+                    consistent &= need[p] >= 0 && need[p] <= open[p];
+                }
+            }
+            if (consistent) {
+                solve(codes, variables, cell + 1, need, open, tornado == 1 ? tornadoes | (1 << cell) : tornadoes, seen);
+            }
+            for (int p = 0; p < INNER; p++) {
+                if (codes[p] >= CLUE && isNeighbour(p, cell)) {
+                    open[p]++;
+                    need[p] += tornado;
+                }
+            }
+        }
+    }
+
+    private static boolean isNeighbour(int inner, int cell) {
+        for (int n : WINDOW_NEIGHBOURS[inner]) {
+            if (n == cell) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     * @return the hit rate, 0 before the first lookup
+     */
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Returns an estimate of the heap used by the entries: a LinkedHashMap entry, a boxed key
+     * and a boxed value each, and the table slot.
+     * @return the estimated bytes
+     */
+    public synchronized long getMemoryBytes() {
+        return entries.size() * (40L + 16 + 16 + 8);
+    }
+
+    /**
+     * Returns a one line summary of the cache for reports.
+     * @return the rule, the lookups, the hit rate, the entries, the evictions and the memory
+     */
+    public synchronized String report() {
+        return String.format("%s hits=%d misses=%d hit_rate=%.3f entries=%d evictions=%d memory_kb=%d",
+                rule, hits, misses, getHitRate(), entries.size(), evictions, getMemoryBytes() / 1024);
+    }
+
+    /**
+     * Returns the offsets of the window cells: the centre, the 6 neighbours, then the 12 cells at distance 2.
+     * @return the offsets
+     */
+    static int[][] window() {
+        int[][] window = new int[CELLS][];
+        int n = 0;
+        for (int distance = 0; distance <= 2; distance++) {
+            for (int dx = -2; dx <= 2; dx++) {
+                for (int dy = -2; dy <= 2; dy++) {
+                    if (Math.max(Math.max(Math.abs(dx), Math.abs(dy)), Math.abs(dx - dy)) == distance) {
+                        window[n++] = new int[] {dx, dy};
+                    }
+                }
+            }
+        }
+        return window;
+    }
+
+    private static int indexOf(int dx, int dy) {
+        for (int i = 0; i < CELLS; i++) {
+            if (WINDOW[i][0] == dx && WINDOW[i][1] == dy) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[][] windowNeighbours() {
+        int[][] directions = {{-1, -1}, {-1, 0}, {0, -1}, {0, 1}, {1, 0}, {1, 1}};
+        int[][] neighbours = new int[INNER][directions.length];
+        for (int i = 0; i < INNER; i++) {
+            for (int d = 0; d < directions.length; d++) {
+                neighbours[i][d] = indexOf(WINDOW[i][0] + directions[d][0], WINDOW[i][1] + directions[d][1]);
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Builds the 12 symmetries of the hexagonal grid as permutations of the window: the 6 rotations
+     * by 60 degrees, (dx, dy) to (dx - dy, dx), each with and without the mirror (dx, dy) to (dy, dx).
+     * @return the position of each window cell under each symmetry
+     */
+    private static int[][] symmetries() {
+        int[][] symmetries = new int[12][CELLS];
+        for (int g = 0; g < 12; g++) {
+            for (int i = 0; i < CELLS; i++) {
+                int dx = WINDOW[i][0];
+                int dy = WINDOW[i][1];
+                if (g >= 6) {
+                    int t = dx;
+                    dx = dy;
+                    dy = t;
+                }
+                for (int r = 0; r < g % 6; r++) {
+                    int t = dx - dy;
+                    dy = dx;
+                    dx = t;
+                }
+                symmetries[g][i] = indexOf(dx, dy);
+            }
+        }
+        return symmetries;
+    }
+}
@@ -0,0 +1,687 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * ProbabilityAgent plays like the IntermediateAgent and guesses when SPS and the SAT solver are stuck.
+ * The guess is the unmarked cell with the lowest exact probability of holding a tornado.
+ *
+ * Each frontier component is counted on its own. A dynamic program runs over the unknown cells of
+ * the component, in the order they are reached from the first one. Its state is the remaining tornado
+ * count of the clues that have some cells assigned and some not, and it counts the consistent
+ * assignments by number of tornadoes. A backward pass counts the completions of every state, so the
+ * count of assignments with a given cell as a tornado comes from one forward and one backward pass.
+ * A component with too many states for this is not counted, and its cells are estimated from their clues.
+ *
+ * The components are then combined with the unconstrained interior cells. With U interior cells and R
+ * tornadoes left, an assignment of M tornadoes to the frontier is completed in C(U, R - M) ways, so the
+ * counts by number of tornadoes of all components are convolved and weighted by these binomials.
+ */
+public class ProbabilityAgent extends IntermediateAgent {
+    private static final double CERTAIN = 1e-12; // relative tolerance for a probability of exactly 0 or 1
+
+    int guesses; // cells probed on a probability rather than a deduction
+    int estimatedComponents; // components too wide to count exactly, whose cells were estimated
+
+    /**
+     * Constructor for creating an instance of ProbabilityAgent.
+     *
+     * @param game    The Tornado sweeper game instance to be played.
+     * @param startX  The x-coordinate of the starting cell to probe.
+     * @param startY  The y-coordinate of the starting cell to probe.
+     * @param verbose A boolean flag that indicates whether to display verbose output during game play.
+     */
+    public ProbabilityAgent(Game game, int startX, int startY, boolean verbose) {
+        super(game, startX, startY, verbose);
+        // every sweep makes a move, so the game ends after at most one sweep per cell
+        maxSteps = game.getSize() * game.getSize();
+    }
+
+    /**
+     * Returns the number of cells probed without being known to be safe.
+     * @return the number of guesses
+     */
+    public int getGuesses() {
+        return guesses;
+    }
+
+    /**
+     * Returns the number of components whose probabilities were estimated rather than counted.
+     * @return the number of estimated components
+     */
+    public int getEstimatedComponents() {
+        return estimatedComponents;
+    }
+
+    /**
+     * Flags the cells that are tornadoes in every consistent assignment, or if there are none
+     * probes the cell with the lowest probability of being a tornado.
+     * @return true, there is always a move while cells are unmarked
+     */
+    @Override
+    protected boolean onStuck() {
+        int size = game.getSize();
+        double[] probabilities = tornadoProbabilities();
+
+        // the count of tornadoes left can decide cells that the clues alone cannot
+        boolean flagged = false;
+        int safest = -1;
+        for (int id = game.nextUnmarked(0); id >= 0; id = game.nextUnmarked(id + 1)) {
+            if (probabilities[id] > 1 - CERTAIN) {
+                setFlag(new int[] {id / size, id % size});
+                flagged = true;
+            } else if (safest < 0 || probabilities[id] < probabilities[safest]) {
+                safest = id;
+            }
+        }
+        if (flagged) {
+            return true;
+        }
+        if (safest < 0) {
+            return false;
+        }
+
+        if (probabilities[safest] > CERTAIN) {
+            guesses++;
+            if (verbose) {
+                out.println("Guess [" + safest / size + "][" + safest % size + "] with probability "
+                        + String.format("%.4f", probabilities[safest]) + " of a tornado");
+            }
+        }
+        this.currentX = safest / size;
+        this.currentY = safest % size;
+        char info = probe(this.currentX, this.currentY);
+        if (info == 't') {
+            this.loss = true;
+            return true;
+        }
+        if (info == '0') {
+            recursivelyProbeZeros(info);
+        }
+        return true;
+    }
+
+    /**
+     * Computes the probability that each unmarked cell is a tornado, given the clues and the number
+     * of tornadoes left, with every consistent placement of the tornadoes equally likely.
+     * @return the probability of each cell by linear index, 0 for cells that are not unmarked
+     */
+    public double[] tornadoProbabilities() {
+        int cells = game.getSize() * game.getSize();
+        double[] probabilities = new double[cells];
+        Vector<FrontierComponent> components = getFrontierComponents();
+        int left = game.getNumTornadoes() - game.getNumFlags();
+        int interior = game.countUnmarked();
+
+        // counts of the consistent assignments of each component by number of tornadoes; a component
+        // over the budget is weighed as if it were interior and its cells are estimated at the end
+        List<ComponentCount> counts = new ArrayList<>();
+        List<ComponentCount> estimated = new ArrayList<>();
+        for (FrontierComponent component : components) {
+            ComponentCount count = new ComponentCount(component);
+            if (count.exact) {
+                counts.add(count);
+                interior -= count.cells.length;
+            } else {
+                estimated.add(count);
+                estimatedComponents++;
+            }
+        }
+
+        // weight of M frontier tornadoes: C(interior, left - M), kept as logarithms and scaled
+        // by the largest weight, so that large boards do not overflow
+        int frontierMax = 0;
+        for (ComponentCount count : counts) {
+            frontierMax += count.total.length - 1;
+        }
+        double[] logWeight = new double[frontierMax + 1];
+        Arrays.fill(logWeight, Double.NEGATIVE_INFINITY);
+        double logW = 0;
+        double maxLogWeight = Double.NEGATIVE_INFINITY;
+        for (int m = Math.min(left, frontierMax); m >= 0 && left - m <= interior; m--) {
+            int k = left - m; // interior tornadoes
+            logWeight[m] = logW;
+            maxLogWeight = Math.max(maxLogWeight, logW);
+            // C(U, k + 1) / C(U, k) = (U - k) / (k + 1)
+            logW += Math.log((double) (interior - k) / (k + 1));
+        }
+        if (maxLogWeight == Double.NEGATIVE_INFINITY) {
+            return probabilities; // the clues are inconsistent with the tornado count
+        }
+        double[] weight = new double[frontierMax + 1];
+        for (int m = 0; m <= frontierMax; m++) {
+            weight[m] = Math.exp(logWeight[m] - maxLogWeight);
+        }
+
+        // the product of the scaled counts of all components except one, for every component
+        double[][] without = new double[counts.size()][];
+        double[] prefix = {1};
+        for (int i = 0; i < counts.size(); i++) {
+            without[i] = prefix;
+            prefix = convolve(prefix, counts.get(i).scaled);
+        }
+        double[] all = prefix;
+        double[] suffix = {1};
+        for (int i = counts.size() - 1; i >= 0; i--) {
+            without[i] = convolve(without[i], suffix);
+            suffix = convolve(suffix, counts.get(i).scaled);
+        }
+
+        double totalMass = 0;
+        double interiorTornadoes = 0; // expected number of interior tornadoes, times totalMass
+        for (int m = 0; m < all.length && m < weight.length; m++) {
+            totalMass += all[m] * weight[m];
+            interiorTornadoes += all[m] * weight[m] * (left - m);
+        }
+        if (totalMass == 0) {
+            return probabilities; // the clues are inconsistent with the tornado count
+        }
+
+        for (int i = 0; i < counts.size(); i++) {
+            ComponentCount count = counts.get(i);
+            // weight of m tornadoes in this component, summed over the other components
+            double[] external = new double[count.total.length];
+            for (int m = 0; m < external.length; m++) {
+                for (int o = 0; o < without[i].length && m + o < weight.length; o++) {
+                    external[m] += without[i][o] * weight[m + o];
+                }
+            }
+            double[] mass = count.tornadoMass(external);
+            for (int c = 0; c < count.cells.length; c++) {
+                probabilities[count.cells[c]] = mass[c] / count.scale / totalMass;
+            }
+        }
+
+        if (interior > 0) {
+            double interiorProbability = interiorTornadoes / totalMass / interior;
+            for (int id = game.nextUnmarked(0); id >= 0; id = game.nextUnmarked(id + 1)) {
+                if (!inComponent(counts, id)) {
+                    probabilities[id] = interiorProbability;
+                }
+            }
+        }
+        for (ComponentCount count : estimated) {
+            double[] estimate = count.estimate();
+            for (int c = 0; c < count.cells.length; c++) {
+                probabilities[count.cells[c]] = estimate[c];
+            }
+        }
+        return probabilities;
+    }
+
+    /**
+     * Returns true if the cell is an unknown cell of one of the components.
+     * @param counts the counted components
+     * @param id the linear index of the cell
+     * @return true if the cell is on the frontier
+     */
+    private static boolean inComponent(List<ComponentCount> counts, int id) {
+        for (ComponentCount count : counts) {
+            if (count.index.containsKey(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the product of two polynomials given by their coefficients.
+     * @param a the coefficients of the first polynomial, by degree
+     * @param b the coefficients of the second polynomial, by degree
+     * @return the coefficients of the product
+     */
+    static double[] convolve(double[] a, double[] b) {
+        double[] c = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < b.length; j++) {
+                c[i + j] += a[i] * b[j];
+            }
+        }
+        return c;
+    }
+
+    /**
+     * A layer of the count: the states reached at one cell, each packed into a long, with their counts
+     * by number of tornadoes. The table uses open addressing over the primitive keys, so looking a state
+     * up does not allocate. States are never negative, so -1 marks an empty slot.
+     */
+    static final class StateTable {
+        private long[] keys = new long[16];
+        private double[][] values = new double[16][];
+        private int size;
+
+        StateTable() {
+            Arrays.fill(keys, -1);
+        }
+
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (keys[slot] != -1 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Returns the counts of a state.
+         * @param key the state
+         * @return the counts, or null if the state is not in the layer
+         */
+        double[] get(long key) {
+            return values[slot(key)];
+        }
+
+        /**
+         * Returns the counts of a state, adding the state with zero counts if it is new.
+         * @param key the state
+         * @param length the number of counts of a new state
+         * @return the counts
+         */
+        double[] getOrCreate(long key, int length) {
+            int slot = slot(key);
+            if (values[slot] == null) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    slot = slot(key);
+                }
+                keys[slot] = key;
+                values[slot] = new double[length];
+                size++;
+            }
+            return values[slot];
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            double[][] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2][];
+            Arrays.fill(keys, -1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Returns the number of slots, to iterate the layer with keyAt and valueAt.
+         * @return the capacity of the table
+         */
+        int capacity() {
+            return keys.length;
+        }
+
+        long keyAt(int slot) {
+            return keys[slot];
+        }
+
+        /**
+         * Returns the counts in a slot.
+         * @param slot the slot
+         * @return the counts, null for an empty slot
+         */
+        double[] valueAt(int slot) {
+            return values[slot];
+        }
+    }
+
+    /**
+     * The consistent assignments of one frontier component, counted by number of tornadoes.
+     * The forward layers count the ways to reach each state and the backward layers the ways
+     * to complete it, both as polynomials in the number of tornadoes. A state packs the remaining
+     * need of the open clues into a long, three bits per clue in the order of active.
+     *
+     * A component that keeps more than MAX_OPEN clues open at once, or whose layers would hold more
+     * than MAX_COEFFICIENTS counts, is not counted: exact is false, and estimate() gives each of its
+     * cells the largest share of tornadoes left among its clues instead.
+     */
+    class ComponentCount {
+        static final int MAX_OPEN = 21; // clues whose need fits in a long at three bits each
+        static final int MAX_COEFFICIENTS = 1 << 21; // counts kept over all the layers of one component
+
+        int[] cells; // unknown cells in elimination order
+        Map<Integer, Integer> index = new HashMap<>(); // position of each cell in cells
+        int[] need; // tornadoes among the unknown neighbours of each clue
+        int[][] clueCells; // positions of the unknown neighbours of each clue, ascending
+        int[][] cellClues; // the clues of each cell
+        int[][] active; // clues open after each cell, ascending, the state is their remaining need
+        int[][] carry; // for each cell, the position before it of each clue open after it, -1 for a clue it opens
+        int[][] posBefore; // for each cell and each of its clues, the position of the clue before the cell, -1 if it opens there
+        int[][] posAfter; // likewise after the cell, -1 if the clue closes there
+        int[][] cellsLeft; // for each cell and each of its clues, the cells of the clue after this one
+        List<StateTable> forward = new ArrayList<>(); // states before each cell
+        List<StateTable> backward = new ArrayList<>(); // completions before each cell
+        boolean exact; // the counts below were computed, false if the component was over the budget
+        int coefficients; // counts stored so far, against MAX_COEFFICIENTS
+        double[] total; // assignments by number of tornadoes
+        double scale; // largest entry of total
+        double[] scaled; // total divided by scale
+
+        ComponentCount(FrontierComponent component) {
+            order(component);
+            exact = prepare() && countForward() && countBackward();
+            if (!exact) {
+                forward = null;
+                backward = null;
+                return;
+            }
+            double[] completions = backward.get(0).get(0);
+            total = completions != null ? completions : new double[] {0};
+            scale = Arrays.stream(total).max().getAsDouble();
+            if (scale == 0) {
+                scale = 1;
+            }
+            scaled = new double[total.length];
+            for (int m = 0; m < total.length; m++) {
+                scaled[m] = total[m] / scale;
+            }
+        }
+
+        /**
+         * Orders the cells breadth-first over shared clues, which keeps few clues open at once,
+         * and builds the clue tables.
+         * @param component the frontier component
+         */
+        private void order(FrontierComponent component) {
+            Neighbourhood nb = game.getNeighbourhood();
+            int numClues = component.clueCells.size();
+            int[][] clueIds = new int[numClues][];
+            need = new int[numClues];
+            Map<Integer, List<Integer>> cluesOf = new HashMap<>();
+            for (int c = 0; c < numClues; c++) {
+                Cell clue = component.clueCells.get(c);
+                int id = clue.getId();
+                need[c] = Character.getNumericValue(clue.getInfo()) - countFlaggedNeighbours(id);
+                int[] ids = new int[countUnmarkedNeighbours(id)];
+                int n = 0;
+                for (int k = nb.start(id); k < nb.end(id); k++) {
+                    if (game.isUnmarked(nb.neighbour(k))) {
+                        ids[n++] = nb.neighbour(k);
+                        cluesOf.computeIfAbsent(nb.neighbour(k), key -> new ArrayList<>()).add(c);
+                    }
+                }
+                clueIds[c] = ids;
+            }
+
+            cells = new int[component.unknownCells.size()];
+            int n = 0;
+            IntDeque queue = new IntDeque(cells.length);
+            boolean[] clueSeen = new boolean[numClues];
+            queue.addLast(component.unknownCells.get(0).getId());
+            index.put(queue.get(0), 0);
+            while (!queue.isEmpty()) {
+                int id = queue.pollFirst();
+                cells[n++] = id;
+                for (int c : cluesOf.get(id)) {
+                    if (clueSeen[c]) {
+                        continue;
+                    }
+                    clueSeen[c] = true;
+                    for (int other : clueIds[c]) {
+                        if (!index.containsKey(other)) {
+                            index.put(other, index.size());
+                            queue.addLast(other);
+                        }
+                    }
+                }
+            }
+            // index holds the queue position, which is the position in cells
+            if (n != cells.length) {
+                throw new IllegalStateException("component " + Arrays.toString(cells) + " is not connected");
+            }
+
+            clueCells = new int[numClues][];
+            int[] cluesPerCell = new int[cells.length];
+            for (int c = 0; c < numClues; c++) {
+                clueCells[c] = new int[clueIds[c].length];
+                for (int i = 0; i < clueIds[c].length; i++) {
+                    clueCells[c][i] = index.get(clueIds[c][i]);
+                    cluesPerCell[clueCells[c][i]]++;
+                }
+                Arrays.sort(clueCells[c]);
+            }
+            cellClues = new int[cells.length][];
+            for (int i = 0; i < cells.length; i++) {
+                cellClues[i] = new int[cluesPerCell[i]];
+                cluesPerCell[i] = 0;
+            }
+            for (int c = 0; c < numClues; c++) {
+                for (int i : clueCells[c]) {
+                    cellClues[i][cluesPerCell[i]++] = c; // clues ascend, as c does
+                }
+            }
+        }
+
+        /**
+         * Builds the open clues after each cell and the tables of the transitions. A clue opens at its
+         * first cell and closes at its last, so each set of open clues follows from the one before.
+         * @return false if too many clues are open at once to pack a state into a long
+         */
+        private boolean prepare() {
+            active = new int[cells.length + 1][];
+            active[0] = new int[0];
+            carry = new int[cells.length][];
+            posBefore = new int[cells.length][];
+            posAfter = new int[cells.length][];
+            cellsLeft = new int[cells.length][];
+            int[] open = new int[need.length];
+            for (int i = 0; i < cells.length; i++) {
+                int numOpen = 0;
+                for (int c : active[i]) {
+                    if (clueCells[c][clueCells[c].length - 1] != i) {
+                        open[numOpen++] = c;
+                    }
+                }
+                for (int c : cellClues[i]) {
+                    if (clueCells[c][0] == i && clueCells[c][clueCells[c].length - 1] != i) {
+                        open[numOpen++] = c;
+                    }
+                }
+                if (numOpen > MAX_OPEN) {
+                    return false;
+                }
+                int[] after = Arrays.copyOf(open, numOpen);
+                Arrays.sort(after);
+                active[i + 1] = after;
+
+                int[] before = active[i];
+                carry[i] = new int[after.length];
+                for (int a = 0; a < after.length; a++) {
+                    carry[i][a] = Math.max(-1, Arrays.binarySearch(before, after[a]));
+                }
+                int[] clues = cellClues[i];
+                posBefore[i] = new int[clues.length];
+                posAfter[i] = new int[clues.length];
+                cellsLeft[i] = new int[clues.length];
+                for (int k = 0; k < clues.length; k++) {
+                    posBefore[i][k] = Math.max(-1, Arrays.binarySearch(before, clues[k]));
+                    posAfter[i][k] = Math.max(-1, Arrays.binarySearch(after, clues[k]));
+                    cellsLeft[i][k] = clueCells[clues[k]].length - (Arrays.binarySearch(clueCells[clues[k]], i) + 1);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the state after assigning cell i, or -1 if the assignment breaks a clue.
+         * @param i the position of the cell
+         * @param state the remaining need of the clues open before cell i
+         * @param tornado 1 if the cell is a tornado, 0 otherwise
+         * @return the remaining need of the clues open after cell i
+         */
+        private long next(int i, long state, int tornado) {
+            long result = 0;
+            int[] from = carry[i];
+            for (int a = 0; a < from.length; a++) {
+                // a clue opened by this cell is set below, as it is one of the clues of the cell
+                long remaining = from[a] >= 0 ? (state >>> (3 * from[a])) & 7 : 0;
+                result |= remaining << (3 * a);
+            }
+            int[] clues = cellClues[i];
+            for (int k = 0; k < clues.length; k++) {
+                int before = posBefore[i][k];
+                int remaining = (before >= 0 ? (int) (state >>> (3 * before)) & 7 : need[clues[k]]) - tornado;
+                // the cells of the clue not yet assigned must be able to hold the remaining need,
+                // so a clue closing at this cell must be met exactly
+                if (remaining < 0 || remaining > cellsLeft[i][k]) {
+                    return -1;
+                }
+                if (posAfter[i][k] >= 0) {
+                    int shift = 3 * posAfter[i][k];
+                    result = (result & ~(7L << shift)) | ((long) remaining << shift);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Counts the ways to reach every state.
+         * @return false if the layers went over the budget
+         */
+        private boolean countForward() {
+            StateTable layer = new StateTable();
+            layer.getOrCreate(0, 1)[0] = 1;
+            forward.add(layer);
+            for (int i = 0; i < cells.length; i++) {
+                int length = i + 2; // at most i + 1 tornadoes after cell i
+                StateTable nextLayer = new StateTable();
+                for (int slot = 0; slot < layer.capacity(); slot++) {
+                    double[] from = layer.valueAt(slot);
+                    if (from == null) {
+                        continue;
+                    }
+                    for (int tornado = 0; tornado <= 1; tornado++) {
+                        long state = next(i, layer.keyAt(slot), tornado);
+                        if (state < 0) {
+                            continue;
+                        }
+                        double[] into = nextLayer.getOrCreate(state, length);
+                        for (int m = 0; m < from.length; m++) {
+                            into[m + tornado] += from[m];
+                        }
+                    }
+                }
+                coefficients += nextLayer.size() * length;
+                if (coefficients > MAX_COEFFICIENTS) {
+                    return false;
+                }
+                layer = nextLayer;
+                forward.add(layer);
+            }
+            return true;
+        }
+
+        /**
+         * Counts the ways to complete every reachable state.
+         * @return false if the layers went over the budget
+         */
+        private boolean countBackward() {
+            for (int i = 0; i <= cells.length; i++) {
+                backward.add(null);
+            }
+            StateTable end = new StateTable();
+            if (forward.get(cells.length).get(0) != null) {
+                end.getOrCreate(0, 1)[0] = 1;
+            }
+            backward.set(cells.length, end);
+            for (int i = cells.length - 1; i >= 0; i--) {
+                StateTable after = backward.get(i + 1);
+                StateTable before = forward.get(i);
+                StateTable layer = new StateTable();
+                int remainingCells = cells.length - i;
+                for (int slot = 0; slot < before.capacity(); slot++) {
+                    if (before.valueAt(slot) == null) {
+                        continue;
+                    }
+                    long state = before.keyAt(slot);
+                    double[] completions = null;
+                    for (int tornado = 0; tornado <= 1; tornado++) {
+                        long nextState = next(i, state, tornado);
+                        double[] from = nextState < 0 ? null : after.get(nextState);
+                        if (from == null) {
+                            continue;
+                        }
+                        if (completions == null) {
+                            completions = layer.getOrCreate(state, remainingCells + 1);
+                        }
+                        for (int m = 0; m < from.length; m++) {
+                            completions[m + tornado] += from[m];
+                        }
+                    }
+                }
+                coefficients += layer.size() * (remainingCells + 1);
+                if (coefficients > MAX_COEFFICIENTS) {
+                    return false;
+                }
+                backward.set(i, layer);
+            }
+            return true;
+        }
+
+        /**
+         * Returns the weighted number of assignments in which each cell is a tornado.
+         * @param external the weight of an assignment with m tornadoes in this component
+         * @return the weighted count for each cell, in the order of cells
+         */
+        double[] tornadoMass(double[] external) {
+            double[] mass = new double[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                StateTable after = backward.get(i + 1);
+                StateTable before = forward.get(i);
+                for (int slot = 0; slot < before.capacity(); slot++) {
+                    double[] prefix = before.valueAt(slot);
+                    if (prefix == null) {
+                        continue;
+                    }
+                    long state = next(i, before.keyAt(slot), 1);
+                    double[] completions = state < 0 ? null : after.get(state);
+                    if (completions == null) {
+                        continue;
+                    }
+                    for (int a = 0; a < prefix.length; a++) {
+                        if (prefix[a] == 0) {
+                            continue;
+                        }
+                        for (int b = 0; b < completions.length; b++) {
+                            int m = a + 1 + b;
+                            if (m < external.length) {
+                                mass[i] += prefix[a] * completions[b] * external[m];
+                            }
+                        }
+                    }
+                }
+            }
+            return mass;
+        }
+
+        /**
+         * Estimates the probability of each cell of a component that was not counted: the largest
+         * share of its remaining tornadoes that one of its clues puts on each of its unknown cells.
+         * @return the estimate for each cell, in the order of cells
+         */
+        double[] estimate() {
+            double[] estimate = new double[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                for (int c : cellClues[i]) {
+                    double share = Math.max(0, Math.min(need[c], clueCells[c].length)) / (double) clueCells[c].length;
+                    estimate[i] = Math.max(estimate[i], share);
+                }
+            }
+            return estimate;
+        }
+    }
+}
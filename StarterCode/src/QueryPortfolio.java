@@ -0,0 +1,124 @@
+import org.logicng.datastructures.Tristate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * QueryPortfolio answers the tornado queries of many cells against one fixed set of clue constraints.
+ * With a parallelism above one the cells are split into consecutive chunks that are solved at the same
+ * time on the common fork-join pool. Each task builds its own SatSession, so every thread has its own
+ * FormulaFactory and solver and nothing is shared. Each task then computes one backbone over its chunk.
+ * The results are returned together, to be applied in one batch.
+ *
+ * Every task encodes all the constraints, so a chunk is never smaller than MIN_CELLS_PER_TASK cells;
+ * a query over fewer cells runs on the calling thread.
+ */
+public class QueryPortfolio {
+    static final int MIN_CELLS_PER_TASK = 8;
+
+    private final Vector<int[]> constraints;
+    private final AgentMetrics metrics;
+    private final AtomicInteger solverCalls = new AtomicInteger();
+    private final AtomicInteger timeouts = new AtomicInteger();
+    private long deadline; // time in milliseconds since the epoch at which the sessions give up, 0 for none
+
+    /**
+     * Creates a portfolio over a snapshot of the knowledge base.
+     * @param constraints the clue constraints, as built by IntermediateAgent.clueConstraint; not modified
+     * @param metrics the metrics of the game, or null
+     */
+    public QueryPortfolio(Vector<int[]> constraints, AgentMetrics metrics) {
+        this.constraints = constraints;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets when the sessions give up (see SatSession.backbone).
+     * @param deadline the time in milliseconds since the epoch, 0 for no deadline
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Decides which cells must be tornadoes and which must be safe.
+     * @param ids the linear indexes of the cells
+     * @param parallelism the largest number of tasks to split the cells into
+     * @return for each cell, TRUE if it must be a tornado, FALSE if it must be safe, UNDEF if either is possible
+     */
+    public Tristate[] solve(int[] ids, int parallelism) {
+        int tasks = Math.min(parallelism, ids.length / MIN_CELLS_PER_TASK);
+        if (tasks <= 1) {
+            return solveChunk(ids);
+        }
+        List<Callable<Tristate[]>> chunks = new ArrayList<>(tasks);
+        for (int t = 0; t < tasks; t++) {
+            int[] chunk = Arrays.copyOfRange(ids, (int) ((long) ids.length * t / tasks),
+                    (int) ((long) ids.length * (t + 1) / tasks));
+            chunks.add(() -> solveChunk(chunk));
+        }
+        List<Future<Tristate[]>> futures = ForkJoinPool.commonPool().invokeAll(chunks);
+        Tristate[] results = new Tristate[ids.length];
+        int position = 0;
+        for (Future<Tristate[]> future : futures) {
+            try {
+                Tristate[] chunkResults = future.get();
+                System.arraycopy(chunkResults, 0, results, position, chunkResults.length);
+                position += chunkResults.length;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while solving the portfolio", ie);
+            } catch (ExecutionException ee) {
+                throw new IllegalStateException(ee.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Solves one chunk on a session of its own.
+     * @param ids the linear indexes of the cells of the chunk
+     * @return the backbone over the chunk
+     */
+    private Tristate[] solveChunk(int[] ids) {
+        if (deadline != 0 && System.currentTimeMillis() >= deadline) {
+            // not even worth encoding
+            timeouts.incrementAndGet();
+            Tristate[] results = new Tristate[ids.length];
+            Arrays.fill(results, Tristate.UNDEF);
+            return results;
+        }
+        SatSession session = new SatSession();
+        session.setMetrics(metrics);
+        for (int[] constraint : constraints) {
+            session.addExactly(constraint);
+        }
+        Tristate[] results = session.backbone(ids, deadline);
+        solverCalls.addAndGet(session.getSolverCalls());
+        timeouts.addAndGet(session.getTimeouts());
+        return results;
+    }
+
+    /**
+     * Returns the number of queries answered by the sessions of this portfolio.
+     * @return the number of solver calls
+     */
+    public int getSolverCalls() {
+        return solverCalls.get();
+    }
+
+    /**
+     * Returns the number of chunks abandoned at the deadline.
+     * @return the number of timeouts
+     */
+    public int getTimeouts() {
+        return timeouts.get();
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * SatSession is a long-lived SAT solver holding the knowledge base of one game.
+ * Clue constraints are added once, when the cell they belong to is revealed, and the cells
+ * forced by the KB are found by backbone computations, so the encoded KB and the learned
+ * clauses are reused across all the computations of the game.
+ *
+ * Constraints are built directly as formulas of the session's FormulaFactory, with one variable
+ * per cell keyed by its linear index, so no text is parsed and boards of any size are supported.
+ *
+ * This class uses the following external libraries:
+ *  - org.logicng:logicng (v2.0.0)
+ *
+ */
+
+import org.logicng.backbones.Backbone;
+import org.logicng.backbones.BackboneType;
+import org.logicng.datastructures.Tristate;
+import org.logicng.formulas.FormulaFactory;
+import org.logicng.formulas.Literal;
+import org.logicng.formulas.Variable;
+import org.logicng.handlers.TimeoutHandler;
+import org.logicng.handlers.TimeoutSATHandler;
+import org.logicng.solvers.MiniSat;
+import org.logicng.solvers.SATSolver;
+import org.logicng.solvers.functions.BackboneFunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SatSession {
+    private final FormulaFactory f;
+    private final SATSolver miniSat;
+    private Variable[] variables = new Variable[64]; // the variable of each cell by linear index, created on first use
+    private int solverCalls; // number of backbone computations made by this session
+    private int timeouts; // number of queries abandoned at their deadline
+    private AgentMetrics metrics; // where encodings and queries are counted, null when metrics are off
+
+    /**
+     * Creates a new session with an empty knowledge base.
+     */
+    public SatSession() {
+        this.f = new FormulaFactory();
+        this.miniSat = MiniSat.miniSat(f);
+    }
+
+    /**
+     * Returns the variable that is true if the cell holds a tornado.
+     * @param id the linear index of the cell
+     * @return the variable of the cell
+     */
+    public Variable variable(int id) {
+        if (id >= variables.length) {
+            variables = Arrays.copyOf(variables, Math.max(id + 1, variables.length * 2));
+        }
+        if (variables[id] == null) {
+            variables[id] = f.variable("T" + id);
+        }
+        return variables[id];
+    }
+
+    /**
+     * Adds the constraint of a clue: exactly k of the given cells are tornadoes. Constraints are
+     * never removed, so only facts that stay true for the rest of the game may be added.
+     * The CNF is built from the template of IntermediateAgent.exactlyTemplate.
+     * @param constraint k followed by the linear indexes of the cells, as built by IntermediateAgent.clueConstraint
+     */
+    public void addExactly(int[] constraint) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        InferenceEvents.Encode event =
+                InferenceEvents.ENCODE.isEnabled() ? new InferenceEvents.Encode() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int k = constraint[0];
+        int n = constraint.length - 1;
+        int literals = 0;
+        if (k < 0 || k > n) {
+            miniSat.add(f.falsum());
+        } else {
+            for (int[] templateClause : IntermediateAgent.exactlyTemplate(n, k)) {
+                Literal[] clause = new Literal[templateClause.length];
+                for (int i = 0; i < clause.length; i++) {
+                    Variable v = variable(constraint[Math.abs(templateClause[i])]);
+                    clause[i] = templateClause[i] < 0 ? v.negate() : v;
+                }
+                miniSat.add(f.clause(clause));
+                literals += clause.length;
+            }
+        }
+        if (metrics != null) {
+            metrics.count(AgentMetrics.Counter.ENCODES, 1);
+            metrics.count(AgentMetrics.Counter.FORMULA_LITERALS, literals);
+            metrics.time(AgentMetrics.Timer.ENCODE, start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.literals = literals;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds the fact that a cell is or is not a tornado.
+     * @param id the linear index of the cell
+     * @param tornado true if the cell is a tornado
+     */
+    public void addFact(int id, boolean tornado) {
+        miniSat.add(tornado ? variable(id) : variable(id).negate());
+    }
+
+    /**
+     * Computes the backbone of the knowledge base over the given cells in one solver invocation:
+     * the cells that are tornadoes in every model and the cells that are safe in every model.
+     * @param ids the linear indexes of the cells
+     * @return for each cell, TRUE if it must be a tornado, FALSE if it must be safe, UNDEF if either is possible
+     */
+    public Tristate[] backbone(int[] ids) {
+        return backbone(ids, 0);
+    }
+
+    /**
+     * Computes the backbone over the given cells, giving up when the deadline passes. The solver is
+     * left as it was before the computation, so the session can still be used after a timeout.
+     * @param ids the linear indexes of the cells
+     * @param deadline the time in milliseconds since the epoch at which to give up, 0 for no deadline
+     * @return for each cell, TRUE if it must be a tornado, FALSE if it must be safe, UNDEF if either is
+     * possible or the deadline passed first
+     */
+    public Tristate[] backbone(int[] ids, long deadline) {
+        solverCalls += 1;
+        long start = metrics != null ? System.nanoTime() : 0;
+        InferenceEvents.BackboneComputation event =
+                InferenceEvents.BACKBONE.isEnabled() ? new InferenceEvents.BackboneComputation() : null;
+        if (event != null) {
+            event.begin();
+        }
+        List<Variable> relevant = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            relevant.add(variable(id));
+        }
+        Backbone backbone;
+        if (deadline == 0) {
+            backbone = miniSat.backbone(relevant);
+        } else {
+            backbone = miniSat.execute(BackboneFunction.builder().variables(relevant)
+                    .type(BackboneType.POSITIVE_AND_NEGATIVE)
+                    .handler(new TimeoutSATHandler(deadline, TimeoutHandler.TimerType.FIXED_END)).build());
+        }
+        if (backbone == null) {
+            // the handler aborted the computation, so nothing is known
+            timeouts += 1;
+            if (metrics != null) {
+                metrics.count(AgentMetrics.Counter.SAT_TIMEOUTS, 1);
+            }
+            Tristate[] results = new Tristate[ids.length];
+            Arrays.fill(results, Tristate.UNDEF);
+            return results;
+        }
+        Tristate[] results = new Tristate[ids.length];
+        int positive = 0;
+        int negative = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (backbone.isSat() && backbone.getPositiveBackbone().contains(variables[ids[i]])) {
+                results[i] = Tristate.TRUE;
+                positive++;
+            } else if (backbone.isSat() && backbone.getNegativeBackbone().contains(variables[ids[i]])) {
+                results[i] = Tristate.FALSE;
+                negative++;
+            } else {
+                results[i] = Tristate.UNDEF;
+            }
+        }
+        if (metrics != null) {
+            metrics.count(AgentMetrics.Counter.BACKBONES, 1);
+            metrics.count(AgentMetrics.Counter.BACKBONE_TORNADOES, positive);
+            metrics.count(AgentMetrics.Counter.BACKBONE_SAFE, negative);
+            metrics.time(AgentMetrics.Timer.BACKBONE, start);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.cells = ids.length;
+            event.tornadoes = positive;
+            event.safe = negative;
+            event.commit();
+        }
+        return results;
+    }
+
+    /**
+     * Sets where the encodings and the queries of this session are counted.
+     * @param metrics the metrics of the game, or null
+     */
+    public void setMetrics(AgentMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the number of backbone computations made by this session.
+     * @return the number of solver calls
+     */
+    public int getSolverCalls() {
+        return solverCalls;
+    }
+
+    /**
+     * Returns the number of queries abandoned at their deadline.
+     * @return the number of timeouts
+     */
+    public int getTimeouts() {
+        return timeouts;
+    }
+}
@@ -0,0 +1,734 @@
+import org.logicng.datastructures.Tristate;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * SelfCheck runs consistency checks of the parts of the game that the expected outputs of the Tests
+ * do not cover, without a test framework. Each check prints "name: ok", or "name: FAILED" with the
+ * reason, and the exit status is 1 if any check failed.
+ *
+ * Usage: java A3main check [rollback|probabilities|loader|trace|server|linear|tournament|render|sps|subset|patterns]
+ *
+ * Without a name every check is run.
+ *  - rollback: the undo journal of Game restores the board and the counters exactly, with nested marks
+ *  - probabilities: the tornado probabilities of ProbabilityAgent on a board solved by hand
+ *  - loader: boards written by BoardLoader in either format load back unchanged
+ *  - trace: a game recorded by MoveTrace is rebuilt by TraceReplay in the same state
+ *  - server: the GameServer protocol over a loopback socket, PLAY after moves and the session limit
+ *  - linear: the cells LinearSolver pins on hand-made and random systems, against every solution
+ *  - tournament: games that throw become error rows of the CSV and the summary, with their traces closed
+ *  - render: the frames BoardRenderer draws in DIFF mode, and the default mode of a bad board.render
+ *  - sps: the SPS worklist of BeginnerAgent stops only when no unmarked cell is decided by a clue
+ *  - subset: the 1-1 and 1-2 patterns of SubsetRule, and its decisions on random boards against the tornadoes
+ *  - patterns: PatternCache answers from rotated and mirrored entries as if it deduced every window afresh
+ */
+public class SelfCheck {
+    private static final PrintStream SILENT = new PrintStream(OutputStream.nullOutputStream());
+    private static final String[] CHECKS = {"rollback", "probabilities", "loader", "trace", "server", "linear", "tournament", "render", "sps", "subset", "patterns"};
+
+    public static void main(String[] args) {
+        String[] names = args.length == 0 ? CHECKS : args;
+        boolean failed = false;
+        for (String name : names) {
+            try {
+                run(name);
+                System.out.println(name + ": ok");
+            } catch (IllegalStateException | IOException | ExecutionException | InterruptedException e) {
+                System.out.println(name + ": FAILED " + e.getMessage());
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void run(String name) throws IOException, InterruptedException, ExecutionException {
+        switch (name) {
+        case "rollback":
+            checkRollback();
+            break;
+        case "probabilities":
+            checkProbabilities();
+            break;
+        case "loader":
+            checkLoader();
+            break;
+        case "trace":
+            checkTrace();
+            break;
+        case "server":
+            checkServer();
+            break;
+        case "linear":
+            checkLinear();
+            break;
+        case "tournament":
+            checkTournament();
+            break;
+        case "render":
+            checkRender();
+            break;
+        case "sps":
+            checkSps();
+            break;
+        case "subset":
+            checkSubset();
+            break;
+        case "patterns":
+            checkPatterns();
+            break;
+        default:
+            throw new IllegalArgumentException("unknown check " + name);
+        }
+    }
+
+    /**
+     * Fails the current check if the condition does not hold.
+     * @param condition the condition
+     * @param message what went wrong
+     */
+    private static void expect(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Returns everything the journal of a game has to restore: the information, probed and flagged
+     * state of every cell and the counters.
+     * @param game the game
+     * @return the state as a string, equal for equal states
+     */
+    static String snapshot(Game game) {
+        int cells = game.getSize() * game.getSize();
+        StringBuilder stringBuilder = new StringBuilder(cells * 3 + 32);
+        for (int id = 0; id < cells; id++) {
+            stringBuilder.append(game.getInfo(id)).append(game.isProbed(id) ? 'p' : '.')
+                    .append(game.isFlagged(id) ? 'f' : '.');
+        }
+        return stringBuilder.append(' ').append(game.getNumCellsProbed()).append(' ')
+                .append(game.getNumFlags()).append(' ').append(game.countUnmarked()).toString();
+    }
+
+    /**
+     * Nested marks are undone one at a time, a committed mark is undone by the enclosing rollback,
+     * and a cell changed twice under one mark goes back to its state before the first change.
+     */
+    private static void checkRollback() {
+        Game game = BoardGenerator.generate(70, 0.15, 7); // over one word of the bitsets per row
+        int size = game.getSize();
+        int[] safe = new int[6];
+        int[] tornadoes = new int[3];
+        for (int id = 0, s = 0, t = 0; id < size * size && (s < safe.length || t < tornadoes.length); id++) {
+            if (game.isTornado(id) && t < tornadoes.length) {
+                tornadoes[t++] = id;
+            } else if (!game.isTornado(id) && s < safe.length) {
+                safe[s++] = id;
+            }
+        }
+        game.updateCells(safe[0] / size, safe[0] % size, game.getCellState(safe[0] / size, safe[0] % size));
+        String start = snapshot(game);
+
+        expect(game.mark() == 1, "first mark is not at depth 1");
+        probe(game, safe[1]);
+        game.putFlag(new int[]{tornadoes[0] / size, tornadoes[0] % size});
+        String outer = snapshot(game);
+
+        expect(game.mark() == 2, "nested mark is not at depth 2");
+        probe(game, safe[2]);
+        game.setInfo(safe[2], 'x'); // the same cell changed twice under one mark
+        game.putFlag(new int[]{tornadoes[1] / size, tornadoes[1] % size});
+        game.rollback();
+        expect(snapshot(game).equals(outer), "inner rollback did not restore the outer state");
+
+        expect(game.mark() == 2, "nested mark is not at depth 2");
+        probe(game, safe[3]);
+        game.putFlag(new int[]{tornadoes[2] / size, tornadoes[2] % size});
+        game.commit();
+        expect(game.getNumCellsProbed() == 3 && game.getNumFlags() == 2, "commit did not keep the changes");
+        expect(game.isProbed(safe[3]) && game.isFlagged(tornadoes[2]), "commit did not keep the cells");
+
+        game.rollback();
+        expect(snapshot(game).equals(start), "outer rollback did not undo the committed mark");
+        boolean threw = false;
+        try {
+            game.rollback();
+        } catch (IllegalStateException e) {
+            threw = true;
+        }
+        expect(threw, "rollback without a mark did not throw");
+
+        // without a mark nothing is journaled, so a later mark starts from the current state
+        probe(game, safe[4]);
+        String later = snapshot(game);
+        game.mark();
+        probe(game, safe[5]);
+        game.rollback();
+        expect(snapshot(game).equals(later), "rollback undid changes made before its mark");
+    }
+
+    private static void probe(Game game, int id) {
+        int size = game.getSize();
+        game.updateCells(id / size, id % size, game.getCellState(id / size, id % size));
+    }
+
+    /**
+     * Three clues over five frontier cells and one interior cell, with three tornadoes:
+     *
+     *   1 a 1      clue (0,0): a + b + c = 1
+     *   b c d      clue (0,2): a + d = 1
+     *   1 e f      clue (2,0): b + e = 1
+     *
+     * The placements are {a, e, f}, {b, d, f} and {c, d, e}, so a, b and c are tornadoes in one
+     * of the three and d, e and the interior cell f in two.
+     *
+     * Then partly probed 5x5 boards, against every placement of the tornadoes on the unprobed cells.
+     */
+    private static void checkProbabilities() {
+        Game game = new Game(new char[][] {{'1', 't', '1'}, {'1', '3', '2'}, {'1', 't', 't'}});
+        ProbabilityAgent agent = new ProbabilityAgent(game, 0, 0, false);
+        agent.setOutput(SILENT);
+        agent.probe(0, 0);
+        agent.probe(0, 2);
+        agent.probe(2, 0);
+        double[] probabilities = agent.tornadoProbabilities();
+        double[] expected = {0, 1.0 / 3, 0, 1.0 / 3, 1.0 / 3, 2.0 / 3, 0, 2.0 / 3, 2.0 / 3};
+        for (int id = 0; id < expected.length; id++) {
+            expect(Math.abs(probabilities[id] - expected[id]) < 1e-9, "cell " + id + " has probability "
+                    + probabilities[id] + ", expected " + expected[id]);
+        }
+
+        for (long seed = 1; seed <= 40; seed++) {
+            game = BoardGenerator.generate(5, 0.3, seed);
+            agent = new ProbabilityAgent(game, 0, 0, false);
+            agent.setOutput(SILENT);
+            SplittableRandom random = new SplittableRandom(seed);
+            while (game.countUnmarked() > 15) {
+                int id = random.nextInt(25);
+                if (!game.isTornado(id) && game.isUnmarked(id)) {
+                    agent.probe(id / 5, id % 5);
+                }
+            }
+            probabilities = agent.tornadoProbabilities();
+            expected = countPlacements(game);
+            for (int id = 0; id < 25; id++) {
+                expect(Math.abs(probabilities[id] - expected[id]) < 1e-9, "board " + seed + " cell " + id
+                        + " has probability " + probabilities[id] + ", expected " + expected[id]);
+            }
+        }
+    }
+
+    /**
+     * Counts every placement of the tornadoes on the unprobed cells that agrees with the probed clues.
+     * @param game a game without flags
+     * @return the share of the placements with a tornado on each cell, 0 for probed cells
+     */
+    private static double[] countPlacements(Game game) {
+        int cells = game.getSize() * game.getSize();
+        int[] unknown = new int[cells];
+        int numUnknown = 0;
+        for (int id = 0; id < cells; id++) {
+            if (game.isUnmarked(id)) {
+                unknown[numUnknown++] = id;
+            }
+        }
+        Neighbourhood nb = game.getNeighbourhood();
+        double[] tornado = new double[cells];
+        double placements = 0;
+        boolean[] placed = new boolean[cells];
+        for (int mask = 0; mask < 1 << numUnknown; mask++) {
+            if (Integer.bitCount(mask) != game.getNumTornadoes()) {
+                continue;
+            }
+            for (int u = 0; u < numUnknown; u++) {
+                placed[unknown[u]] = (mask & (1 << u)) != 0;
+            }
+            boolean consistent = true;
+            for (int id = game.nextProbed(0); id >= 0 && consistent; id = game.nextProbed(id + 1)) {
+                int count = 0;
+                for (int k = nb.start(id); k < nb.end(id); k++) {
+                    count += placed[nb.neighbour(k)] ? 1 : 0;
+                }
+                consistent = count == game.getInfo(id) - '0';
+            }
+            if (consistent) {
+                placements++;
+                for (int u = 0; u < numUnknown; u++) {
+                    tornado[unknown[u]] += placed[unknown[u]] ? 1 : 0;
+                }
+            }
+        }
+        for (int id = 0; id < cells; id++) {
+            tornado[id] /= placements;
+        }
+        return tornado;
+    }
+
+    /**
+     * Boards of sizes around the word boundaries of the bitsets are written and loaded back in both formats.
+     */
+    private static void checkLoader() throws IOException {
+        Path file = Files.createTempFile("board", ".tsb");
+        try {
+            for (int size : new int[] {1, 5, 7, 8, 9, 63, 64, 65}) {
+                Game game = BoardGenerator.generate(size, 0.2, size);
+                BoardLoader.writeBinary(file, game);
+                expect(Arrays.deepEquals(BoardLoader.load(file).getMap(), game.getMap()),
+                        "binary board of size " + size + " changed");
+                BoardLoader.writeText(file, game);
+                expect(Arrays.deepEquals(BoardLoader.load(file).getMap(), game.getMap()),
+                        "text board of size " + size + " changed");
+            }
+            for (World world : World.values()) {
+                Game game = new Game(world.map);
+                BoardLoader.writeText(file, game);
+                expect(Arrays.deepEquals(BoardLoader.load(file).getMap(), game.getMap()),
+                        "text board " + world + " changed");
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A game with marks, a commit and rollbacks before the agent plays it is replayed from its
+     * trace: to the start after the rollback, and to the final state after every move.
+     */
+    private static void checkTrace() throws IOException {
+        Path file = Files.createTempFile("moves", ".trc");
+        try {
+            Game game = BoardGenerator.generate(24, 0.12, 3);
+            String start;
+            String end;
+            try (MoveTrace trace = MoveTrace.open(file)) {
+                game.setTrace(trace);
+                start = snapshot(game);
+                int size = game.getSize();
+                game.mark();
+                probe(game, game.center()[0] * size + game.center()[1]);
+                game.mark();
+                probe(game, 0);
+                game.commit();
+                game.rollback();
+                Agent agent = Agent.create("P3", game, false);
+                agent.setOutput(SILENT);
+                agent.playGame();
+                end = snapshot(game);
+            }
+            List<TraceReplay.GameTrace> games = TraceReplay.read(file);
+            expect(games.size() == 1, "trace holds " + games.size() + " games, expected 1");
+            TraceReplay.GameTrace trace = games.get(0);
+            expect(snapshot(trace.replay(0)).equals(start), "replay of no move differs from the start");
+            expect(snapshot(trace.replay(6)).equals(start), "replay up to the rollback differs from the start");
+            expect(snapshot(trace.replay(trace.getNumMoves())).equals(end), "replay of every move differs from the end");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A client that probes before PLAY is refused, as the agents start from an untouched board. PLAY on a
+     * new session solves it, and its probe count is the number of probed cells. Concurrent NEW requests
+     * never go over the session limit.
+     */
+    private static void checkServer() throws IOException, InterruptedException, ExecutionException {
+        try (GameServer server = new GameServer(0, 60_000, 3)) {
+            Thread serving = new Thread(server::serve);
+            serving.setDaemon(true);
+            serving.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+                expectReply(out, in, "NEW LARGE1", "OK 1 ");
+                expectReply(out, in, "PROBE 1 0 0", "OK 0 ");
+                expectReply(out, in, "PROBE 1 5 5", "OK ");
+                expectReply(out, in, "PLAY 1 P3", "ERR session already has moves");
+
+                expectReply(out, in, "NEW LARGE1", "OK 2 ");
+                String[] played = expectReply(out, in, "PLAY 2 P3", "OK alive ").split(" ");
+                String state = expectReply(out, in, "STATE 2", "OK ");
+                expect(state.endsWith(" won"), "solved session is not won: " + state);
+                int probed = 0;
+                for (char c : state.substring(3, state.lastIndexOf(' ')).toCharArray()) {
+                    probed += c >= '0' && c <= '6' ? 1 : 0;
+                }
+                expect(Integer.parseInt(played[2]) == probed, "PLAY counted " + played[2] + " probes for "
+                        + probed + " probed cells");
+                expectReply(out, in, "PLAY 2 P3", "ERR game over");
+
+                expectReply(out, in, "NEW SMALL1", "OK 3 ");
+                expectReply(out, in, "NEW SMALL1", "ERR too many sessions");
+                expectReply(out, in, "CLOSE 1", "OK");
+                expectReply(out, in, "NEW SMALL1", "OK 4 ");
+                expectReply(out, in, "SESSIONS", "OK 3");
+                expectReply(out, in, "NEW nosuchboard", "ERR ");
+                expectReply(out, in, "PROBE 4 9 9", "ERR cell outside the board");
+                expectReply(out, in, "FROB", "ERR unknown request FROB");
+            }
+        }
+
+        try (GameServer server = new GameServer(0, 60_000, 5)) {
+            ExecutorService clients = Executors.newFixedThreadPool(8);
+            List<Callable<String>> requests = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                requests.add(() -> server.respond(new String[] {"NEW", "SMALL1"}));
+            }
+            int created = 0;
+            for (Future<String> reply : clients.invokeAll(requests)) {
+                created += reply.get().startsWith("OK") ? 1 : 0;
+            }
+            clients.shutdown();
+            expect(created == 5 && server.getSessionCount() == 5, created + " of 32 concurrent sessions created, limit 5");
+        }
+    }
+
+    /**
+     * Sends one request and checks the start of the reply.
+     * @return the reply
+     */
+    private static String expectReply(PrintWriter out, BufferedReader in, String request, String prefix) throws IOException {
+        out.println(request);
+        String reply = in.readLine();
+        expect(reply != null && reply.startsWith(prefix), request + " answered " + reply + ", expected " + prefix);
+        return reply;
+    }
+
+    /**
+     * Two clues that need elimination: a + b = 1 and a + b + c = 2 pin c as a tornado, and with the
+     * cell b known to be safe also a. Then random systems over up to twelve cells, where every pinned
+     * cell must take its value in every solution and every cell pinned by a single clue must be found.
+     */
+    private static void checkLinear() {
+        int[] cells = {3, 5, 8};
+        Vector<int[]> constraints = new Vector<>();
+        constraints.add(new int[] {1, 3, 5});
+        constraints.add(new int[] {2, 3, 5, 8});
+        Tristate[] pinned = LinearSolver.solve(constraints, cells, null);
+        expect(pinned[0] == null && pinned[1] == null && pinned[2] == Tristate.TRUE,
+                "a + b = 1, a + b + c = 2 pinned " + Arrays.toString(pinned));
+        pinned = LinearSolver.solve(constraints, cells, new Tristate[] {null, Tristate.FALSE, null});
+        expect(pinned[0] == Tristate.TRUE && pinned[2] == Tristate.TRUE,
+                "with b safe pinned " + Arrays.toString(pinned));
+
+        SplittableRandom random = new SplittableRandom(5);
+        for (int t = 0; t < 3000; t++) {
+            int n = 2 + random.nextInt(11);
+            cells = new int[n];
+            int solution = 0;
+            for (int i = 0; i < n; i++) {
+                cells[i] = i * 3 + 1;
+                solution |= random.nextInt(3) == 0 ? 1 << i : 0;
+            }
+            constraints = new Vector<>();
+            for (int c = 1 + random.nextInt(n); c > 0; c--) {
+                int members = 0;
+                for (int i = 0; i < n; i++) {
+                    members |= random.nextInt(3) == 0 ? 1 << i : 0;
+                }
+                members = members == 0 ? 1 << random.nextInt(n) : members;
+                int[] constraint = new int[Integer.bitCount(members) + 1];
+                constraint[0] = Integer.bitCount(members & solution);
+                for (int i = 0, k = 1; i < n; i++) {
+                    if ((members & (1 << i)) != 0) {
+                        constraint[k++] = cells[i];
+                    }
+                }
+                constraints.add(constraint);
+            }
+            pinned = LinearSolver.solve(constraints, cells, null);
+            int canBeTornado = 0;
+            int canBeSafe = 0;
+            for (int mask = 0; mask < 1 << n; mask++) {
+                boolean consistent = true;
+                for (int[] constraint : constraints) {
+                    int tornadoes = 0;
+                    for (int k = 1; k < constraint.length; k++) {
+                        tornadoes += (mask >> ((constraint[k] - 1) / 3)) & 1;
+                    }
+                    consistent &= tornadoes == constraint[0];
+                }
+                if (consistent) {
+                    canBeTornado |= mask;
+                    canBeSafe |= ~mask;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                boolean tornado = (canBeTornado & (1 << i)) != 0;
+                boolean safe = (canBeSafe & (1 << i)) != 0;
+                expect(pinned[i] != Tristate.TRUE || !safe, "system " + t + " pins a safe cell as a tornado");
+                expect(pinned[i] != Tristate.FALSE || !tornado, "system " + t + " pins a tornado as safe");
+            }
+            for (int[] constraint : constraints) {
+                if (constraint[0] == 0 || constraint[0] == constraint.length - 1) {
+                    for (int k = 1; k < constraint.length; k++) {
+                        expect(pinned[(constraint[k] - 1) / 3] != null, "system " + t + " misses a single clue pattern");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A board that does not load and an agent that does not exist are recorded as errors, next to
+     * the games that played. The summary counts them as lost, and the trace opened for the game of the
+     * unknown agent is still closed, so it holds its game header.
+     */
+    private static void checkTournament() throws IOException {
+        Path traces = Files.createTempDirectory("traces");
+        PrintStream err = System.err;
+        try {
+            Tournament tournament = new Tournament(List.of("P1", "P9"), List.of("gen:8:0.1:1", "no-such-board.txt"),
+                    1, null);
+            tournament.setTraces(traces);
+            System.setErr(SILENT);
+            List<Tournament.GameResult> results = tournament.play();
+            System.setErr(err);
+            expect(results.size() == 4, results.size() + " results, expected 4");
+            String[] outcomes = new String[results.size()];
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = results.get(i).outcome;
+            }
+            expect(!outcomes[0].equals("error") && outcomes[1].equals("error") && outcomes[2].equals("error")
+                    && outcomes[3].equals("error"), "outcomes " + Arrays.toString(outcomes));
+            expect(results.get(3).toCsv().startsWith("P9,no-such-board.txt,error,"),
+                    "error row " + results.get(3).toCsv());
+
+            ByteArrayOutputStream summary = new ByteArrayOutputStream();
+            Tournament.printSummary(results, new PrintStream(summary, true, StandardCharsets.UTF_8));
+            String[] lines = summary.toString(StandardCharsets.UTF_8).split("\n");
+            expect(lines.length == 2 && lines[0].startsWith("# P1 games=2 win_rate=")
+                    && lines[0].endsWith(" errors=1") && lines[1].startsWith("# P9 games=2 win_rate=0.000")
+                    && lines[1].endsWith(" errors=2"), "summary " + Arrays.toString(lines));
+
+            Path trace = traces.resolve("P9_gen_8_0.1_1.trc");
+            expect(Files.exists(trace), "no trace for the game of the unknown agent");
+            int games = TraceReplay.read(trace).size();
+            expect(games == 1, "trace of the unknown agent holds " + games + " games, expected 1");
+        } finally {
+            System.setErr(err);
+            try (Stream<Path> files = Files.list(traces)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(traces);
+        }
+    }
+
+    /**
+     * DIFF draws the first board in full, then only the changed cells, nothing when no cell changed,
+     * and a board of another size in full again. An unknown board.render value gives FULL.
+     */
+    private static void checkRender() {
+        char[][] board = {{'?', '?', '?'}, {'?', '1', '?'}, {'0', '?', '?'}};
+        ByteArrayOutputStream drawn = new ByteArrayOutputStream();
+        BoardRenderer renderer = new BoardRenderer(new PrintStream(drawn, true, StandardCharsets.UTF_8),
+                BoardRenderer.Mode.DIFF);
+        StringBuilder full = new StringBuilder();
+        BoardRenderer.appendBoard(board, full);
+        renderer.render(board);
+        expect(drawn.toString(StandardCharsets.UTF_8).equals(full.toString()), "first frame is not the full board");
+
+        drawn.reset();
+        board[0][1] = 't';
+        board[2][0] = '2';
+        renderer.render(board);
+        String changed = drawn.toString(StandardCharsets.UTF_8);
+        expect(changed.equals("changed: 0,1=t 2,0=2" + System.lineSeparator()), "second frame " + changed);
+
+        drawn.reset();
+        renderer.render(board);
+        expect(drawn.size() == 0, "frame without changes drew " + drawn.size() + " bytes");
+
+        char[][] larger = {{'?', '?', '?', '?'}, {'?', '?', '?', '?'}, {'?', '?', '?', '?'}, {'?', '?', '?', '?'}};
+        full.setLength(0);
+        BoardRenderer.appendBoard(larger, full);
+        renderer.render(larger);
+        expect(drawn.toString(StandardCharsets.UTF_8).equals(full.toString()), "larger board is not drawn in full");
+
+        String property = System.getProperty("board.render");
+        PrintStream err = System.err;
+        try {
+            System.setErr(SILENT);
+            System.setProperty("board.render", "sparkly");
+            expect(BoardRenderer.defaultMode() == BoardRenderer.Mode.FULL, "unknown board.render is not FULL");
+            System.setProperty("board.render", " Diff ");
+            expect(BoardRenderer.defaultMode() == BoardRenderer.Mode.DIFF, "board.render \" Diff \" is not DIFF");
+        } finally {
+            System.setErr(err);
+            if (property == null) {
+                System.clearProperty("board.render");
+            } else {
+                System.setProperty("board.render", property);
+            }
+        }
+    }
+
+    /**
+     * After BeginnerAgent has played a generated board, a full scan finds no unmarked cell next to a
+     * clue whose tornadoes are all flagged or whose unmarked cells are all tornadoes: the worklist
+     * missed no cell that SPS could still decide.
+     */
+    private static void checkSps() {
+        for (long seed = 1; seed <= 40; seed++) {
+            Game game = BoardGenerator.generate(16, 0.2, seed);
+            Agent agent = Agent.create("P2", game, false);
+            agent.setOutput(SILENT);
+            agent.playGame();
+            Neighbourhood nb = game.getNeighbourhood();
+            int cells = game.getSize() * game.getSize();
+            for (int id = 0; id < cells; id++) {
+                if (!game.isProbed(id) || game.getInfo(id) == 't') {
+                    continue;
+                }
+                int flags = 0;
+                int unmarked = 0;
+                for (int k = nb.start(id); k < nb.end(id); k++) {
+                    int n = nb.neighbour(k);
+                    if (game.isFlagged(n)) {
+                        flags++;
+                    } else if (game.isUnmarked(n)) {
+                        unmarked++;
+                    }
+                }
+                int clue = Character.getNumericValue(game.getInfo(id));
+                expect(unmarked == 0 || (clue != flags && clue - flags != unmarked),
+                        "seed " + seed + ": the clue at " + id + " still decides " + unmarked + " cells");
+            }
+        }
+    }
+
+    /**
+     * Two neighbouring clues sharing the unknowns x and y, with a third unknown z next to the second
+     * only: 1 and 1 make z safe, 1 and 2 make it a tornado, and untouched clues are not compared again.
+     * Then on boards with a random third of the safe cells probed, every cell decided from the constraints
+     * of the probed cells is decided the way the board is, and some cells are decided.
+     */
+    private static void checkSubset() {
+        Game game = BoardGenerator.generate(8, 0.1, 1);
+        Neighbourhood nb = game.getNeighbourhood();
+        int a = 3 * 8 + 3;
+        int b = nb.neighbour(nb.start(a));
+        int[] xyz = {nb.neighbour(nb.start(a) + 1), nb.neighbour(nb.start(a) + 2), nb.neighbour(nb.start(a) + 3)};
+        Arrays.sort(xyz, 0, 2);
+        for (int k = 1; k <= 2; k++) {
+            int[][] constraints = new int[64][];
+            constraints[a] = new int[] {1, xyz[0], xyz[1]};
+            constraints[b] = new int[] {k, xyz[0], xyz[1], xyz[2]};
+            Arrays.sort(constraints[b], 1, 4);
+            Tristate[] forced = new Tristate[64];
+            SubsetRule rule = new SubsetRule(nb);
+            rule.touch(a);
+            rule.touch(b);
+            int decided = rule.apply(id -> constraints[id], forced);
+            Tristate expected = k == 1 ? Tristate.FALSE : Tristate.TRUE;
+            expect(decided == 1 && forced[xyz[2]] == expected, "1 and " + k + " decided " + decided
+                    + " cells, z is " + forced[xyz[2]] + ", expected " + expected);
+            expect(rule.apply(id -> constraints[id], forced) == 0 && rule.getPairs() == 0,
+                    "untouched clues were compared again");
+        }
+
+        int total = 0;
+        for (long seed = 1; seed <= 20; seed++) {
+            game = BoardGenerator.generate(16, 0.2, seed);
+            nb = game.getNeighbourhood();
+            int cells = game.getSize() * game.getSize();
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int id = 0; id < cells; id++) {
+                if (!game.isTornado(id) && random.nextInt(3) == 0) {
+                    probe(game, id);
+                }
+            }
+            int[][] constraints = new int[cells][];
+            SubsetRule rule = new SubsetRule(nb);
+            for (int id = 0; id < cells; id++) {
+                if (!game.isProbed(id)) {
+                    continue;
+                }
+                int[] constraint = new int[nb.end(id) - nb.start(id) + 1];
+                int length = 1;
+                for (int l = nb.start(id); l < nb.end(id); l++) {
+                    int n = nb.neighbour(l);
+                    if (game.isUnmarked(n)) {
+                        constraint[length++] = n;
+                    }
+                }
+                if (length > 1) {
+                    constraint[0] = Character.getNumericValue(game.getInfo(id));
+                    constraints[id] = Arrays.copyOf(constraint, length);
+                    Arrays.sort(constraints[id], 1, length);
+                    rule.touch(id);
+                }
+            }
+            Tristate[] forced = new Tristate[cells];
+            total += rule.apply(id -> constraints[id], forced);
+            for (int id = 0; id < cells; id++) {
+                expect(forced[id] == null || (forced[id] == Tristate.TRUE) == game.isTornado(id),
+                        "seed " + seed + ": cell " + id + " decided " + forced[id]);
+            }
+        }
+        expect(total > 0, "no cell decided on the random boards");
+    }
+
+    /**
+     * On boards with a random third of the safe cells probed, the forced cells of every window looked up
+     * in one cache, which answers from the entries of rotated and mirrored windows, equal those deduced
+     * by a cache that has not seen the window, and are forced the way the board is.
+     */
+    private static void checkPatterns() {
+        int[][] window = PatternCache.window();
+        PatternCache cache = new PatternCache(PatternCache.Rule.LOCAL, 1 << 16);
+        for (long seed = 1; seed <= 20; seed++) {
+            Game game = BoardGenerator.generate(16, 0.2, seed);
+            int size = game.getSize();
+            SplittableRandom random = new SplittableRandom(seed);
+            for (int id = 0; id < size * size; id++) {
+                if (!game.isTornado(id) && random.nextInt(3) == 0) {
+                    probe(game, id);
+                }
+            }
+            for (int id = 0; id < size * size; id++) {
+                if (!game.isUnmarked(id)) {
+                    continue;
+                }
+                long masks = cache.forcedCells(game, id);
+                long fresh = new PatternCache(PatternCache.Rule.LOCAL, 1).forcedCells(game, id);
+                expect(masks == fresh, "seed " + seed + ": window of " + id + " forced " + Long.toHexString(masks)
+                        + " from the cache, " + Long.toHexString(fresh) + " afresh");
+                for (int i = 0; i < window.length; i++) {
+                    boolean safe = (masks & (1L << i)) != 0;
+                    boolean tornado = (masks & (1L << (32 + i))) != 0;
+                    if (safe || tornado) {
+                        int n = (id / size + window[i][0]) * size + id % size + window[i][1];
+                        expect(tornado == game.isTornado(n), "seed " + seed + ": window of " + id
+                                + " forced cell " + n + (tornado ? " to a tornado" : " safe"));
+                    }
+                }
+            }
+        }
+        expect(cache.getHitRate() > 0, "no window was answered from the cache");
+    }
+}
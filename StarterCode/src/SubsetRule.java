@@ -0,0 +1,163 @@
+import org.logicng.datastructures.Tristate;
+
+import java.util.function.IntFunction;
+
+/**
+ * SubsetRule compares the constraints of pairs of overlapping clues. For clues A and B, with
+ * kA and kB tornadoes among their unknown neighbours, if kB - kA equals the number of unknown
+ * neighbours of B that are not neighbours of A, those cells are all tornadoes and the neighbours of A
+ * that are not neighbours of B are all safe. This covers the 1-1 pattern, where the unknowns of A are a
+ * subset of those of B and the difference is safe, and the 1-2 pattern, where the difference is
+ * full of tornadoes.
+ *
+ * Two clues share an unknown neighbour only if they are at most two cells apart, so each clue is only
+ * compared with the clues of its radius-2 window, taken from the precomputed Neighbourhood.
+ * Clues are compared again only when their constraint changed: the caller touches the clues
+ * around every changed cell, and a pair of untouched clues has already given its moves.
+ */
+public class SubsetRule {
+    private final Neighbourhood nb;
+    private final long[] dirty; // bitset of the clues whose constraint changed since the last run
+    private final int[] seen; // generation in which each cell was last visited, to visit a window once
+    private int generation;
+    private int pairs; // clue pairs compared in the last run
+
+    /**
+     * Creates the rule for a board.
+     * @param nb the neighbourhood of the board
+     */
+    public SubsetRule(Neighbourhood nb) {
+        this.nb = nb;
+        int cells = nb.getSize() * nb.getSize();
+        this.dirty = new long[(cells + 63) >>> 6];
+        this.seen = new int[cells];
+    }
+
+    /**
+     * Marks a clue whose constraint changed, so it is compared with its window in the next run.
+     * @param id the linear index of the probed cell
+     */
+    public void touch(int id) {
+        dirty[id >>> 6] |= 1L << id;
+    }
+
+    /**
+     * Compares every touched clue with the clues of its window and clears the touched clues.
+     * @param constraintOf the constraint of a clue, k followed by the ascending linear indexes of its
+     *                     unknown neighbours, or null if the cell is not a clue with unknown neighbours
+     * @param forced the cells decided so far by linear index, TRUE for a tornado and FALSE for a safe cell; updated
+     * @return the number of cells newly decided
+     */
+    public int apply(IntFunction<int[]> constraintOf, Tristate[] forced) {
+        int decided = 0;
+        pairs = 0;
+        for (int word = 0; word < dirty.length; word++) {
+            long bits = dirty[word];
+            dirty[word] = 0;
+            while (bits != 0) {
+                int a = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int[] constraintA = constraintOf.apply(a);
+                if (constraintA == null) {
+                    continue;
+                }
+                generation++;
+                seen[a] = generation;
+                for (int k = nb.start(a); k < nb.end(a); k++) {
+                    int n = nb.neighbour(k);
+                    for (int l = nb.start(n); l < nb.end(n); l++) {
+                        decided += visit(constraintOf, constraintA, nb.neighbour(l), forced);
+                    }
+                    decided += visit(constraintOf, constraintA, n, forced);
+                }
+            }
+        }
+        return decided;
+    }
+
+    /**
+     * Compares a clue with a cell of its window, if that cell is a clue not yet visited.
+     * @return the number of cells newly decided
+     */
+    private int visit(IntFunction<int[]> constraintOf, int[] constraintA, int b, Tristate[] forced) {
+        if (seen[b] == generation) {
+            return 0;
+        }
+        seen[b] = generation;
+        int[] constraintB = constraintOf.apply(b);
+        if (constraintB == null) {
+            return 0;
+        }
+        pairs++;
+        return compare(constraintA, constraintB, forced) + compare(constraintB, constraintA, forced);
+    }
+
+    /**
+     * Applies the rule in one direction: if the clue of B needs exactly as many more tornadoes than
+     * the clue of A as B has cells outside A, the cells of B outside A are tornadoes and the cells of
+     * A outside B are safe.
+     * @return the number of cells newly decided
+     */
+    private static int compare(int[] a, int[] b, Tristate[] forced) {
+        int shared = countShared(a, b);
+        if (shared == 0) {
+            return 0;
+        }
+        int onlyB = b.length - 1 - shared;
+        if (b[0] - a[0] != onlyB) {
+            return 0;
+        }
+        return mark(b, a, Tristate.TRUE, forced) + mark(a, b, Tristate.FALSE, forced);
+    }
+
+    /**
+     * Counts the cells the two constraints have in common, by merging their ascending cell lists.
+     */
+    private static int countShared(int[] a, int[] b) {
+        int shared = 0;
+        int i = 1;
+        int j = 1;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Decides the cells of one constraint that are not in the other.
+     * @return the number of cells newly decided
+     */
+    private static int mark(int[] from, int[] other, Tristate value, Tristate[] forced) {
+        int decided = 0;
+        int j = 1;
+        for (int i = 1; i < from.length; i++) {
+            while (j < other.length && other[j] < from[i]) {
+                j++;
+            }
+            if (j < other.length && other[j] == from[i]) {
+                continue;
+            }
+            if (forced[from[i]] == null) {
+                forced[from[i]] = value;
+                decided++;
+            }
+        }
+        return decided;
+    }
+
+    /**
+     * Returns the number of clue pairs compared in the last run.
+     * @return the number of pairs
+     */
+    public int getPairs() {
+        return pairs;
+    }
+}
@@ -0,0 +1,409 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * The Tournament class plays every agent on every board inside one JVM, on a thread pool sized to the cores.
+ * The output of each game is captured on its own stream instead of being interleaved on System.out.
+ * One CSV line is printed per game, followed by the win rate and the latency percentiles of each agent.
+ * The solver_calls column counts the backbone computations of the game, on every session it used.
+ * A game that throws is recorded with the outcome error and the tournament carries on with the others.
+ *
+ * Usage: java A3main tournament [agents=P1,P2,P3] [boards=ALL] [threads=N] [out=results.csv] [logs=dir] [spsCache=true]
+ *        [metrics=true] [portfolio=true] [moveBudgetMs=N] [gameBudgetMs=N] [traces=dir]
+ *
+ * With spsCache=true the P2 agents look SPS up in the shared pattern cache. The hit rate and memory of
+ * the pattern caches are printed after the summary. With metrics=true the AgentMetrics registry
+ * is printed as well. With portfolio=true the P3 and P4 agents split their SAT queries over the common
+ * fork-join pool (see QueryPortfolio). With a budget the P3 and P4 agents stop solving at the deadline of each
+ * sweep or of the game (see IntermediateAgent.setBudget), and the summary counts the sweeps that fell back.
+ * With traces=dir the moves of each game are recorded in a MoveTrace file of its own in dir.
+ *
+ * Boards are a comma separated list of:
+ *  - ALL for every World, or a prefix ending with '*' such as LARGE* for a size class
+ *  - a World name, or the path of a board file
+ *  - a directory, for every board file in it
+ *  - gen:size:density:from-to[:P2|P3] for generated boards with the seeds from to to
+ */
+public class Tournament {
+    private static final String HEADER = "agent,board,outcome,probes,flags,wall_ms,solver_calls";
+
+    private final List<String> agents;
+    private final List<String> boards;
+    private final int threads;
+    private final Path logs; // directory where the output of each game is written, null to discard it
+    private boolean spsCache; // P2 agents use the shared SPS pattern cache
+    private boolean portfolio; // P3 and P4 agents split their queries over the fork-join pool
+    private long moveBudgetMillis; // time budget of a sweep of the P3 and P4 agents, 0 for none
+    private long gameBudgetMillis; // time budget of a game of the P3 and P4 agents, 0 for none
+    private Path traces; // directory where the moves of each game are recorded, null to not record them
+
+    /**
+     * Creates a tournament.
+     * @param agents the agents to play, "P1", "P2" or "P3"
+     * @param boards the boards, already expanded
+     * @param threads the number of games played at the same time
+     * @param logs the directory where the output of each game is written, or null
+     */
+    public Tournament(List<String> agents, List<String> boards, int threads, Path logs) {
+        this.agents = agents;
+        this.boards = boards;
+        this.threads = threads;
+        this.logs = logs;
+    }
+
+    /**
+     * Sets whether the P2 agents look SPS up in the shared pattern cache.
+     * @param spsCache true to use the cache
+     */
+    public void setSpsCache(boolean spsCache) {
+        this.spsCache = spsCache;
+    }
+
+    /**
+     * Sets whether the P3 and P4 agents split their SAT queries over the common fork-join pool.
+     * @param portfolio true to use the query portfolio
+     */
+    public void setPortfolio(boolean portfolio) {
+        this.portfolio = portfolio;
+    }
+
+    /**
+     * Sets the time budgets of the P3 and P4 agents.
+     * @param moveMillis the budget of a sweep, 0 for none
+     * @param gameMillis the budget of a game, 0 for none
+     */
+    public void setBudget(long moveMillis, long gameMillis) {
+        this.moveBudgetMillis = moveMillis;
+        this.gameBudgetMillis = gameMillis;
+    }
+
+    /**
+     * Sets the directory where the moves of each game are recorded (see MoveTrace).
+     * @param traces the directory, or null
+     */
+    public void setTraces(Path traces) {
+        this.traces = traces;
+    }
+
+    /**
+     * The result of one game.
+     */
+    static class GameResult {
+        String agent;
+        String board;
+        String outcome;
+        int probes;
+        int flags;
+        long wallNanos;
+        int solverCalls;
+        int fallbacks; // sweeps cut short by a time budget
+
+        String toCsv() {
+            return agent + "," + board + "," + outcome + "," + probes + "," + flags + ","
+                    + String.format("%.3f", wallNanos / 1e6) + "," + solverCalls;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> agents = Arrays.asList("P1", "P2", "P3");
+        List<String> boardSpecs = Arrays.asList("ALL");
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path out = null;
+        Path logs = null;
+        boolean spsCache = false;
+        boolean portfolio = false;
+        long moveBudgetMillis = 0;
+        long gameBudgetMillis = 0;
+        Path traces = null;
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("expected key=value, got " + arg);
+            }
+            switch (option[0]) {
+            case "agents":
+                agents = Arrays.asList(option[1].split(","));
+                break;
+            case "boards":
+                boardSpecs = Arrays.asList(option[1].split(","));
+                break;
+            case "threads":
+                threads = Integer.parseInt(option[1]);
+                break;
+            case "out":
+                out = Path.of(option[1]);
+                break;
+            case "logs":
+                logs = Path.of(option[1]);
+                Files.createDirectories(logs);
+                break;
+            case "metrics":
+                AgentMetrics.setEnabled(Boolean.parseBoolean(option[1]));
+                break;
+            case "spsCache":
+                spsCache = Boolean.parseBoolean(option[1]);
+                break;
+            case "portfolio":
+                portfolio = Boolean.parseBoolean(option[1]);
+                break;
+            case "moveBudgetMs":
+                moveBudgetMillis = Long.parseLong(option[1]);
+                break;
+            case "gameBudgetMs":
+                gameBudgetMillis = Long.parseLong(option[1]);
+                break;
+            case "traces":
+                traces = Path.of(option[1]);
+                Files.createDirectories(traces);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option " + option[0]);
+            }
+        }
+
+        List<String> boards = new ArrayList<>();
+        for (String spec : boardSpecs) {
+            boards.addAll(expandBoards(spec));
+        }
+        Tournament tournament = new Tournament(agents, boards, threads, logs);
+        tournament.setSpsCache(spsCache);
+        tournament.setPortfolio(portfolio);
+        tournament.setBudget(moveBudgetMillis, gameBudgetMillis);
+        tournament.setTraces(traces);
+        List<GameResult> results = tournament.play();
+
+        PrintStream csv = out == null ? System.out : new PrintStream(Files.newOutputStream(out), false, StandardCharsets.UTF_8);
+        csv.println(HEADER);
+        for (GameResult result : results) {
+            csv.println(result.toCsv());
+        }
+        csv.flush();
+        if (out != null) {
+            csv.close();
+        }
+        printSummary(results, System.out);
+        System.out.println("# pattern cache " + PatternCache.shared(PatternCache.Rule.SPS).report());
+        System.out.println("# pattern cache " + PatternCache.shared(PatternCache.Rule.LOCAL).report());
+        if (AgentMetrics.isEnabled()) {
+            AgentMetrics.printRegistry(System.out);
+        }
+    }
+
+    /**
+     * Expands one board specification into board arguments that BoardLoader.fromArgument accepts.
+     * @param spec the specification
+     * @return the boards
+     * @throws IOException if a directory cannot be listed
+     */
+    static List<String> expandBoards(String spec) throws IOException {
+        List<String> boards = new ArrayList<>();
+        if (spec.equals("ALL") || spec.endsWith("*")) {
+            String prefix = spec.equals("ALL") ? "" : spec.substring(0, spec.length() - 1);
+            for (World world : World.values()) {
+                if (world.name().startsWith(prefix)) {
+                    boards.add(world.name());
+                }
+            }
+        } else if (spec.startsWith("gen:") && spec.split(":")[3].contains("-")) {
+            String[] parts = spec.split(":");
+            String[] seeds = parts[3].split("-");
+            String suffix = parts.length > 4 ? ":" + parts[4] : "";
+            for (long seed = Long.parseLong(seeds[0]); seed <= Long.parseLong(seeds[1]); seed++) {
+                boards.add("gen:" + parts[1] + ":" + parts[2] + ":" + seed + suffix);
+            }
+        } else if (Files.isDirectory(Path.of(spec))) {
+            try (Stream<Path> files = Files.list(Path.of(spec))) {
+                files.filter(Files::isRegularFile).map(Path::toString).sorted().forEach(boards::add);
+            }
+        } else {
+            boards.add(spec);
+        }
+        return boards;
+    }
+
+    /**
+     * Plays every agent on every board and waits for all the games.
+     * A game that throws gets the outcome error, and its exception is printed on System.err.
+     * @return the results, in the order agents x boards
+     */
+    public List<GameResult> play() {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<GameResult>> futures = new ArrayList<>();
+            for (String agent : agents) {
+                for (String board : boards) {
+                    futures.add(pool.submit(() -> playOne(agent, board)));
+                }
+            }
+            List<GameResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    GameResult result = new GameResult();
+                    result.agent = agents.get(i / boards.size());
+                    result.board = boards.get(i % boards.size());
+                    result.outcome = "error";
+                    System.err.println("# " + result.agent + " on " + result.board + " failed: " + e.getCause());
+                    results.add(result);
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("tournament interrupted", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays one game, capturing its output.
+     * @param agentName the agent
+     * @param board the board
+     * @return the result of the game
+     */
+    private GameResult playOne(String agentName, String board) {
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(captured, false, StandardCharsets.UTF_8);
+        Game game = BoardLoader.fromArgument(board);
+        // the trace is closed even when the game throws, so its file is complete up to the failure
+        try (MoveTrace trace = traces == null ? null
+                : MoveTrace.open(traces.resolve(logName(agentName, board, ".trc")))) {
+            if (trace != null) {
+                game.setTrace(trace);
+            }
+            Agent agent = Agent.create(agentName, game, false);
+            agent.setOutput(out);
+            if (logs == null) {
+                agent.setRenderMode(BoardRenderer.Mode.SILENT); // the captured output is only kept for the logs
+            }
+            if (spsCache && agent instanceof BeginnerAgent) {
+                ((BeginnerAgent) agent).setPatternCache(PatternCache.shared(PatternCache.Rule.SPS));
+            }
+            if (agent instanceof IntermediateAgent) {
+                if (portfolio) {
+                    ((IntermediateAgent) agent).setQueryPortfolio(true);
+                }
+                if (moveBudgetMillis > 0 || gameBudgetMillis > 0) {
+                    ((IntermediateAgent) agent).setBudget(moveBudgetMillis, gameBudgetMillis);
+                }
+            }
+
+            long start = System.nanoTime();
+            agent.playGame();
+            long wallNanos = System.nanoTime() - start;
+
+            GameResult result = new GameResult();
+            result.agent = agentName;
+            result.board = board;
+            result.outcome = outcomeName(agent.getResult());
+            result.probes = game.getNumCellsProbed();
+            result.flags = game.getNumFlags();
+            result.wallNanos = wallNanos;
+            result.solverCalls = agent.getSolverCalls();
+            if (agent instanceof IntermediateAgent) {
+                result.fallbacks = ((IntermediateAgent) agent).getFallbacks();
+            }
+
+            if (logs != null) {
+                out.flush();
+                Files.write(logs.resolve(logName(agentName, board, ".out")), captured.toByteArray());
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the name of the file of a game in the logs or traces directory.
+     * @param agentName the agent
+     * @param board the board
+     * @param extension the extension, with its dot
+     * @return the file name
+     */
+    private static String logName(String agentName, String board, String extension) {
+        return agentName + "_" + board.replaceAll("[^A-Za-z0-9.-]", "_") + extension;
+    }
+
+    /**
+     * Returns the short name of an outcome for the CSV.
+     * @param result the outcome reported by the agent
+     * @return alive, dead, not_terminated or unknown
+     */
+    static String outcomeName(String result) {
+        if (Agent.ALIVE.equals(result)) {
+            return "alive";
+        } else if (Agent.DEAD.equals(result)) {
+            return "dead";
+        } else if (Agent.NOT_TERMINATED.equals(result)) {
+            return "not_terminated";
+        }
+        return "unknown";
+    }
+
+    /**
+     * Prints the win rate and the wall time percentiles of each agent.
+     * Games that ended in an error count as lost and are left out of the percentiles.
+     * @param results the results of all games
+     * @param out the stream to print to
+     */
+    static void printSummary(List<GameResult> results, PrintStream out) {
+        Map<String, List<GameResult>> byAgent = new TreeMap<>();
+        for (GameResult result : results) {
+            byAgent.computeIfAbsent(result.agent, a -> new ArrayList<>()).add(result);
+        }
+        for (Map.Entry<String, List<GameResult>> entry : byAgent.entrySet()) {
+            List<GameResult> games = entry.getValue();
+            long[] times = new long[games.size()];
+            int played = 0;
+            int wins = 0;
+            int fallbacks = 0;
+            int errors = 0;
+            for (GameResult game : games) {
+                if (game.outcome.equals("error")) {
+                    errors++;
+                    continue;
+                }
+                times[played++] = game.wallNanos;
+                fallbacks += game.fallbacks;
+                if (game.outcome.equals("alive")) {
+                    wins++;
+                }
+            }
+            times = Arrays.copyOf(times, Math.max(played, 1)); // a single zero when every game failed
+            Arrays.sort(times);
+            out.printf("# %s games=%d win_rate=%.3f p50_ms=%.3f p90_ms=%.3f p99_ms=%.3f max_ms=%.3f fallbacks=%d errors=%d%n",
+                    entry.getKey(), games.size(), (double) wins / games.size(),
+                    percentile(times, 0.50) / 1e6, percentile(times, 0.90) / 1e6,
+                    percentile(times, 0.99) / 1e6, times[times.length - 1] / 1e6, fallbacks, errors);
+        }
+    }
+
+    /**
+     * Returns the value at the given percentile of sorted samples (nearest rank).
+     * @param sorted the samples in ascending order
+     * @param p the percentile, between 0 and 1
+     * @return the sample at the percentile
+     */
+    static long percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TraceReplay reads the games recorded by MoveTrace and rebuilds the state of any of them after any
+ * number of moves, by applying the recorded moves to a new Game. Nothing is solved again.
+ *
+ * Usage: java A3main replay trace.bin [game=N] [move=M]
+ *
+ * Without a game, one line is printed per recorded game. With a game, its board is printed after
+ * M moves (all of them by default), followed by the probes, the flags and the time of that move.
+ */
+public class TraceReplay {
+
+    /**
+     * One recorded game: its board and its moves.
+     */
+    public static class GameTrace {
+        int size;
+        long[] tornadoes; // bitset over linear cell ids of the cells holding a tornado
+        long startMillis; // start time in milliseconds since the epoch
+        int[] moves = new int[64]; // (value << 2 | action) of each move
+        long[] micros = new long[64]; // time of each move in microseconds since the start
+        int numMoves;
+
+        void add(int move, long time) {
+            if (numMoves == moves.length) {
+                moves = Arrays.copyOf(moves, numMoves * 2);
+                micros = Arrays.copyOf(micros, numMoves * 2);
+            }
+            moves[numMoves] = move;
+            micros[numMoves] = time;
+            numMoves++;
+        }
+
+        /**
+         * Returns the number of recorded moves.
+         * @return the number of moves
+         */
+        public int getNumMoves() {
+            return numMoves;
+        }
+
+        /**
+         * Returns the time of a move.
+         * @param move the number of moves made, 0 for the start
+         * @return microseconds since the start of the game
+         */
+        public long getMicros(int move) {
+            return move == 0 ? 0 : micros[move - 1];
+        }
+
+        /**
+         * Rebuilds the game after the given number of moves.
+         * @param upTo the number of moves to apply, at most getNumMoves()
+         * @return a new game in the recorded state
+         */
+        public Game replay(int upTo) {
+            Game game = new Game(size, tornadoes);
+            for (int i = 0; i < upTo; i++) {
+                int value = moves[i] >>> 2;
+                switch (moves[i] & 3) {
+                case MoveTrace.PROBE:
+                    game.updateCells(value / size, value % size, game.getCellState(value / size, value % size));
+                    break;
+                case MoveTrace.FLAG:
+                    game.putFlag(new int[]{value / size, value % size});
+                    break;
+                case MoveTrace.CONTROL:
+                    if (value == MoveTrace.MARK) {
+                        game.mark();
+                    } else if (value == MoveTrace.ROLLBACK) {
+                        game.rollback();
+                    } else {
+                        game.commit();
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected record in a game");
+                }
+            }
+            return game;
+        }
+    }
+
+    /**
+     * Reads every game of a trace file.
+     * @param path the file written by MoveTrace
+     * @return the games in the order they were recorded
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public static List<GameTrace> read(Path path) throws IOException {
+        List<GameTrace> games = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MoveTrace.MAGIC.length];
+            if (in.remaining() < magic.length) {
+                throw new IOException("not a move trace: " + path);
+            }
+            in.get(magic);
+            if (!Arrays.equals(magic, MoveTrace.MAGIC)) {
+                throw new IOException("not a move trace: " + path);
+            }
+            GameTrace game = null;
+            long time = 0;
+            while (in.hasRemaining()) {
+                long record = getVarint(in);
+                int action = (int) (record & 3);
+                if (action == MoveTrace.GAME) {
+                    game = new GameTrace();
+                    game.size = (int) (record >>> 2);
+                    game.startMillis = getVarint(in);
+                    game.tornadoes = new long[(game.size * game.size + 63) >>> 6];
+                    long count = getVarint(in);
+                    int id = -1;
+                    for (long t = 0; t < count; t++) {
+                        id += (int) getVarint(in);
+                        game.tornadoes[id >>> 6] |= 1L << id;
+                    }
+                    games.add(game);
+                    time = 0;
+                } else {
+                    if (game == null) {
+                        throw new IOException("move before the first game in " + path);
+                    }
+                    time += getVarint(in);
+                    game.add((int) record, time);
+                }
+            }
+        }
+        return games;
+    }
+
+    private static long getVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new IOException("truncated move trace");
+            }
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in move trace");
+    }
+
+    /**
+     * Lists the games of a trace, or prints the state of one of them.
+     * @param args the trace file, then options as key=value: game and move
+     * @throws IOException if the trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: replay trace.bin [game=N] [move=M]");
+            return;
+        }
+        int gameIndex = -1;
+        int move = -1;
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("expected key=value, got " + args[i]);
+            }
+            switch (option[0]) {
+            case "game":
+                gameIndex = Integer.parseInt(option[1]);
+                break;
+            case "move":
+                move = Integer.parseInt(option[1]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option " + option[0]);
+            }
+        }
+
+        List<GameTrace> games = read(Path.of(args[0]));
+        if (gameIndex < 0) {
+            for (int i = 0; i < games.size(); i++) {
+                GameTrace game = games.get(i);
+                System.out.printf("game=%d size=%d moves=%d duration_ms=%.3f%n", i, game.size, game.numMoves,
+                        game.getMicros(game.numMoves) / 1e3);
+            }
+            return;
+        }
+        GameTrace trace = games.get(gameIndex);
+        int upTo = move < 0 ? trace.numMoves : Math.min(move, trace.numMoves);
+        Game game = trace.replay(upTo);
+        A3main.printBoard(game.getGameState());
+        System.out.printf("move=%d probes=%d flags=%d time_ms=%.3f%n", upTo, game.getNumCellsProbed(),
+                game.getNumFlags(), trace.getMicros(upTo) / 1e3);
+    }
+}
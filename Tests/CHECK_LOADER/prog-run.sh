@@ -0,0 +1 @@
+./playSweeper.sh check loader